@@ -0,0 +1,51 @@
+/* $Id$ */
+
+package chess.engine.model;
+
+/**
+ * The positions every benchmark runs over, by name, so results line up across
+ * benchmarks and across commits.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public final class BenchmarkPositions
+{
+  public static final String OPENING = "opening";
+  public static final String MIDDLEGAME = "middlegame";
+  public static final String ENDGAME = "endgame";
+
+  private BenchmarkPositions()
+  {
+  }
+
+  public static String getFEN(String name)
+  {
+    if (name.equals(OPENING))
+    {
+      return "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4";
+    }
+    if (name.equals(MIDDLEGAME))
+    {
+      // Kiwipete
+      return "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    }
+    if (name.equals(ENDGAME))
+    {
+      return "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+    }
+    throw new IllegalArgumentException("Unknown position: " + name);
+  }
+
+  public static Board create(String name)
+  {
+    return create(name, false);
+  }
+
+  public static Board create(String name, boolean lazyAttacks)
+  {
+    Board board = new Board(lazyAttacks);
+    board.setFENPosition(getFEN(name));
+    return board;
+  }
+}
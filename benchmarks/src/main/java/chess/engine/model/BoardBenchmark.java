@@ -0,0 +1,132 @@
+/* $Id$ */
+
+package chess.engine.model;
+
+import chess.engine.utils.MoveGeneration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Board.make/unmake, including the incremental attack map updates, and
+ * Piece.calculateAttacks.  Each op covers every move, or every piece, of the position.
+ *
+ * With lazyAttacks make/unmake skips the attack maps, and makeUpdateUnmake charges it for
+ * rebuilding them in every child and restoring them in the parent, as the search does.
+ * makeRestore is copy-make: the position is saved once, and each move is taken back from it.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark
+{
+  @Param({BenchmarkPositions.OPENING, BenchmarkPositions.MIDDLEGAME, BenchmarkPositions.ENDGAME})
+  public String position;
+
+  @Param({"false", "true"})
+  public boolean lazyAttacks;
+
+  private Board board;
+  private Move[] moves = Move.createMoves(256);
+  private int moveCount;
+  private Piece[] pieces;
+  private BoardState state = new BoardState();
+
+  @Setup
+  public void setUp()
+  {
+    board = BenchmarkPositions.create(position, lazyAttacks);
+    board.updateAttacks();
+    moveCount = new MoveGeneration().generateFullMoves(moves, board);
+
+    int pieceCount = 0;
+    Piece[] onBoard = new Piece[32];
+    for (Piece piece : board.pieces)
+    {
+      if (piece.square != null && board.boardSquares[piece.square.index128].piece == piece)
+      {
+        onBoard[pieceCount++] = piece;
+      }
+    }
+    pieces = new Piece[pieceCount];
+    System.arraycopy(onBoard, 0, pieces, 0, pieceCount);
+  }
+
+  @Benchmark
+  public long makeUnmake()
+  {
+    long hash = 0;
+    for (int i = 0; i < moveCount; i++)
+    {
+      board.make(moves[i]);
+      hash ^= board.hash1;
+      board.unmake(moves[i]);
+    }
+    return hash;
+  }
+
+  @Benchmark
+  public long makeRestore()
+  {
+    long hash = 0;
+    state.save(board);
+    for (int i = 0; i < moveCount; i++)
+    {
+      board.make(moves[i]);
+      hash ^= board.hash1;
+      board.unmake(moves[i], state);
+    }
+    return hash;
+  }
+
+  @Benchmark
+  public long copy()
+  {
+    return board.copy().hash1;
+  }
+
+  @Benchmark
+  public long makeUpdateUnmake()
+  {
+    long attacks = 0;
+    for (int i = 0; i < moveCount; i++)
+    {
+      board.make(moves[i]);
+      board.updateAttacks();
+      attacks ^= board.attacks[0];
+      board.unmake(moves[i]);
+      board.updateAttacks();
+    }
+    return attacks;
+  }
+
+  @Benchmark
+  public long calculateAttacks()
+  {
+    // removing first leaves the board's attack maps as they were
+    long attacks = 0;
+    for (Piece piece : pieces)
+    {
+      piece.removeAttacks(board, piece.square);
+      piece.calculateAttacks(board, piece.square);
+      attacks ^= piece.attacks;
+    }
+    return attacks;
+  }
+}
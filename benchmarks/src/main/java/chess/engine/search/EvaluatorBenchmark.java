@@ -0,0 +1,69 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.BenchmarkPositions;
+import chess.engine.model.Board;
+import chess.engine.utils.MoveGeneration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleEvaluator.scorePosition, and scorePawns with the pawn hash hitting and missing.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluatorBenchmark
+{
+  @Param({BenchmarkPositions.OPENING, BenchmarkPositions.MIDDLEGAME, BenchmarkPositions.ENDGAME})
+  public String position;
+
+  private SimpleEvaluator eval;
+  private Board board;
+
+  @Setup
+  public void setUp()
+  {
+    eval = new SimpleEvaluator(new MoveGeneration());
+    board = BenchmarkPositions.create(position);
+    board.stats.originalMaterial = eval.getMaterial(board);
+    board.stats.originalMaterialDifference = eval.getMaterialDifference(board);
+  }
+
+  @Benchmark
+  public int scorePosition()
+  {
+    return eval.scorePosition(board, -Searcher.INFINITY, Searcher.INFINITY);
+  }
+
+  @Benchmark
+  public SimpleEvaluator.PawnFlags scorePawnsHit()
+  {
+    return eval.scorePawns(board);
+  }
+
+  @Benchmark
+  public SimpleEvaluator.PawnFlags scorePawnsMiss()
+  {
+    eval.pawnHash.getEntryNoNull(board).hash = 0;
+    return eval.scorePawns(board);
+  }
+}
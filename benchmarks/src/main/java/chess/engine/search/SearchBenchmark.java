@@ -0,0 +1,108 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.BenchmarkPositions;
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.utils.MoveGeneration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ABSearch.swap over every capture of the position, and ABSearch.nextMove
+ * picking through the whole move list.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark
+{
+  @Param({BenchmarkPositions.OPENING, BenchmarkPositions.MIDDLEGAME, BenchmarkPositions.ENDGAME})
+  public String position;
+
+  private ABSearch search;
+  private Board board;
+
+  private Move[] moves = Move.createMoves(256);
+  private Move[] generated = new Move[256];
+  private int[] generatedScores = new int[256];
+  private int moveCount;
+
+  private Move[] captures;
+
+  @Setup
+  public void setUp()
+  {
+    MoveGeneration moveGeneration = new MoveGeneration();
+    search = new ABSearch(moveGeneration, new SimpleEvaluator(moveGeneration));
+    search.setStats(new SearchStats());
+    board = BenchmarkPositions.create(position);
+
+    moveCount = moveGeneration.generateMoves(moves, board);
+    System.arraycopy(moves, 0, generated, 0, moveCount + 1);
+
+    int captureCount = 0;
+    for (int i = 0; i < moveCount; i++)
+    {
+      generatedScores[i] = moves[i].score;
+      if (moves[i].taken != null)
+      {
+        captureCount++;
+      }
+    }
+    captures = new Move[captureCount];
+    for (int i = 0, c = 0; i < moveCount; i++)
+    {
+      if (moves[i].taken != null)
+      {
+        captures[c++] = moves[i];
+      }
+    }
+  }
+
+  @Benchmark
+  public int swap()
+  {
+    int total = 0;
+    for (Move capture : captures)
+    {
+      total += search.swap(board, capture, board.turn ^ 1);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public Move nextMove()
+  {
+    // nextMove rescores and reorders the list, so put it back as generated
+    System.arraycopy(generated, 0, moves, 0, moveCount + 1);
+    for (int i = 0; i < moveCount; i++)
+    {
+      moves[i].score = generatedScores[i];
+    }
+
+    for (int i = 0; i < moveCount; i++)
+    {
+      search.nextMove(board, moves, i, null);
+    }
+    return moves[moveCount - 1];
+  }
+}
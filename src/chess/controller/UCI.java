@@ -0,0 +1,589 @@
+/* $Id$ */
+
+package chess.controller;
+
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.model.Piece;
+import chess.engine.model.Square;
+import chess.engine.search.BoardEvaluator;
+import chess.engine.search.IterativeSearch;
+import chess.engine.search.OpeningBook;
+import chess.engine.search.ParallelSearch;
+import chess.engine.search.PositionHashtable;
+import chess.engine.search.SearchListener;
+import chess.engine.search.SearchStats;
+import chess.engine.search.Searcher;
+import chess.engine.search.SimpleEvaluator;
+import chess.engine.search.TimeManager;
+import chess.engine.utils.MoveGeneration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * A UCI front end, so the engine can be run by any UCI GUI or tournament manager.
+ * Commands are read from stdin and answered on stdout; the search's own debug
+ * output stays on stderr, where GUIs ignore it.
+ *
+ * Run with: java chess.controller.UCI
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public class UCI implements SearchListener
+{
+  private static final String NAME = "DonkeyFactory";
+  private static final String AUTHOR = "Joshua Levine";
+  private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+  private static final int MAX_DEPTH = 100;
+  private static final int MAX_THREADS = 64;
+
+  // kept back from every move for the GUI and the JVM
+  private static final long MOVE_OVERHEAD = 50;
+  private static final String DEFAULT_BOOK = "book.bin";
+
+  private PrintStream out;
+  private MoveGeneration moveGeneration = new MoveGeneration();
+  private BoardEvaluator eval = new SimpleEvaluator(moveGeneration);
+  private Move[] availableMoves = Move.createMoves(256);
+
+  private int threads = 1;
+  private int hashMegabytes = PositionHashtable.DEFAULT_SIZE_MB;
+  private ParallelSearch search;
+  private IterativeSearch iterativeSearch;
+  private TimeManager timeManager = new TimeManager();
+  private OpeningBook openingBook;
+
+  private Board board;
+
+  private Thread searchThread;
+  private long searchStart;
+
+  // while pondering or searching infinitely, the best move waits for stop or ponderhit
+  private final Object holdLock = new Object();
+  private boolean holdBestMove;
+  private boolean pondering;
+  // the clock from go ponder, which starts on ponderhit
+  private long ponderTimeLeft;
+  private long ponderIncrement;
+  private int ponderMovesToGo;
+  private long ponderMoveTime;
+
+  public UCI(PrintStream out)
+  {
+    this.out = out;
+    board = new Board();
+    board.setFENPosition(START_POSITION);
+    timeManager.setMoveOverhead(MOVE_OVERHEAD);
+    if (new File(DEFAULT_BOOK).isFile())
+    {
+      openBook(DEFAULT_BOOK);
+    }
+    createSearch();
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    new UCI(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+  }
+
+  public void run(BufferedReader in) throws IOException
+  {
+    String line;
+    while ((line = in.readLine()) != null)
+    {
+      line = line.trim();
+      if (line.length() == 0)
+      {
+        continue;
+      }
+      if (!processCommand(line))
+      {
+        break;
+      }
+    }
+    stopSearch();
+  }
+
+  /**
+   * @return false when the GUI has asked us to quit
+   */
+  public boolean processCommand(String line)
+  {
+    String[] tokens = line.split("\\s+");
+    String command = tokens[0];
+
+    if (command.equals("uci"))
+    {
+      send("id name " + NAME);
+      send("id author " + AUTHOR);
+      send("option name Hash type spin default " + PositionHashtable.DEFAULT_SIZE_MB +
+           " min 1 max " + PositionHashtable.MAX_SIZE_MB);
+      send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+      send("option name Ponder type check default false");
+      send("option name BookFile type string default " + (openingBook != null ? DEFAULT_BOOK : "<empty>"));
+      send("uciok");
+    }
+    else if (command.equals("isready"))
+    {
+      send("readyok");
+    }
+    else if (command.equals("ucinewgame"))
+    {
+      stopSearch();
+      search.getAbHashtable().clearInBackground();
+    }
+    else if (command.equals("setoption"))
+    {
+      setOption(tokens);
+    }
+    else if (command.equals("position"))
+    {
+      stopSearch();
+      setPosition(tokens);
+    }
+    else if (command.equals("go"))
+    {
+      stopSearch();
+      go(tokens);
+    }
+    else if (command.equals("stop"))
+    {
+      stopSearch();
+    }
+    else if (command.equals("ponderhit"))
+    {
+      ponderhit();
+    }
+    else if (command.equals("quit"))
+    {
+      return false;
+    }
+    else
+    {
+      System.err.println("Unknown command: " + line);
+    }
+    return true;
+  }
+
+  private void createSearch()
+  {
+    search = new ParallelSearch(moveGeneration, eval, threads, hashMegabytes);
+    iterativeSearch = new IterativeSearch(search, moveGeneration, eval);
+    iterativeSearch.setListener(this);
+    iterativeSearch.setTimeManager(timeManager);
+    iterativeSearch.setOpeningBook(openingBook);
+  }
+
+  /**
+   * @param path the book file, empty for none
+   */
+  private void openBook(String path)
+  {
+    openingBook = null;
+    if (path.length() > 0)
+    {
+      try
+      {
+        openingBook = new OpeningBook(new File(path));
+      }
+      catch (IOException e)
+      {
+        System.err.println("Unable to read opening book " + path + ": " + e.getMessage());
+      }
+    }
+    if (iterativeSearch != null)
+    {
+      iterativeSearch.setOpeningBook(openingBook);
+    }
+  }
+
+  private void setOption(String[] tokens)
+  {
+    // setoption name <id> [value <x>]
+    String name = "";
+    String value = "";
+    boolean inValue = false;
+    for (int i = 1; i < tokens.length; i++)
+    {
+      if (tokens[i].equals("name"))
+      {
+        continue;
+      }
+      if (tokens[i].equals("value"))
+      {
+        inValue = true;
+        continue;
+      }
+      if (inValue)
+      {
+        value = value.length() == 0 ? tokens[i] : value + " " + tokens[i];
+      }
+      else
+      {
+        name = name.length() == 0 ? tokens[i] : name + " " + tokens[i];
+      }
+    }
+
+    try
+    {
+      if (name.equalsIgnoreCase("Hash"))
+      {
+        stopSearch();
+        hashMegabytes = Math.max(1, Math.min(PositionHashtable.MAX_SIZE_MB, Integer.parseInt(value)));
+        search.getAbHashtable().resize(hashMegabytes);
+      }
+      else if (name.equalsIgnoreCase("BookFile"))
+      {
+        stopSearch();
+        openBook(value.equals("<empty>") ? "" : value);
+      }
+      else if (name.equalsIgnoreCase("Threads"))
+      {
+        stopSearch();
+        threads = Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(value)));
+        createSearch();
+      }
+    }
+    catch (NumberFormatException e)
+    {
+      System.err.println("Bad value for " + name + ": " + value);
+    }
+  }
+
+  private void setPosition(String[] tokens)
+  {
+    // position [fen <fenstring> | startpos] [moves <move1> .... <movei>]
+    int index = 1;
+    String fen = START_POSITION;
+    if (index < tokens.length && tokens[index].equals("fen"))
+    {
+      StringBuilder builder = new StringBuilder();
+      for (index++; index < tokens.length && !tokens[index].equals("moves"); index++)
+      {
+        builder.append(tokens[index]).append(' ');
+      }
+      fen = builder.toString();
+    }
+    else if (index < tokens.length && tokens[index].equals("startpos"))
+    {
+      index++;
+    }
+
+    board = new Board();
+    board.setFENPosition(fen);
+
+    if (index < tokens.length && tokens[index].equals("moves"))
+    {
+      for (index++; index < tokens.length; index++)
+      {
+        Move move = findMove(tokens[index]);
+        if (move == null)
+        {
+          System.err.println("Illegal move: " + tokens[index]);
+          return;
+        }
+        board.make(move);
+      }
+    }
+  }
+
+  private Move findMove(String uciMove)
+  {
+    if (uciMove.length() < 4)
+    {
+      return null;
+    }
+
+    Square from = Square.valueOf(uciMove.substring(0, 2).toUpperCase());
+    Square to = Square.valueOf(uciMove.substring(2, 4).toUpperCase());
+    int promoteTo = -1;
+    if (uciMove.length() > 4)
+    {
+      switch (uciMove.charAt(4))
+      {
+        case 'n':
+          promoteTo = Piece.KNIGHT;
+          break;
+        case 'b':
+          promoteTo = Piece.BISHOP;
+          break;
+        case 'r':
+          promoteTo = Piece.ROOK;
+          break;
+        default:
+          promoteTo = Piece.QUEEN;
+      }
+    }
+
+    int moveCount = moveGeneration.generateFullMoves(availableMoves, board);
+    for (int i = 0; i < moveCount; i++)
+    {
+      Move move = availableMoves[i];
+      if (move.fromSquare == from && move.toSquare == to && move.promoteTo == promoteTo)
+      {
+        return move;
+      }
+    }
+    return null;
+  }
+
+  private void go(String[] tokens)
+  {
+    long whiteTime = 0, blackTime = 0, whiteIncrement = 0, blackIncrement = 0, moveTime = 0;
+    int movesToGo = 0;
+    int depth = MAX_DEPTH;
+    boolean infinite = false;
+    boolean ponder = false;
+
+    for (int i = 1; i < tokens.length; i++)
+    {
+      String token = tokens[i];
+      if (token.equals("infinite"))
+      {
+        infinite = true;
+      }
+      else if (token.equals("ponder"))
+      {
+        ponder = true;
+      }
+      else if (i + 1 < tokens.length)
+      {
+        if (token.equals("wtime"))
+        {
+          whiteTime = Long.parseLong(tokens[++i]);
+        }
+        else if (token.equals("btime"))
+        {
+          blackTime = Long.parseLong(tokens[++i]);
+        }
+        else if (token.equals("winc"))
+        {
+          whiteIncrement = Long.parseLong(tokens[++i]);
+        }
+        else if (token.equals("binc"))
+        {
+          blackIncrement = Long.parseLong(tokens[++i]);
+        }
+        else if (token.equals("movestogo"))
+        {
+          movesToGo = Integer.parseInt(tokens[++i]);
+        }
+        else if (token.equals("movetime"))
+        {
+          moveTime = Long.parseLong(tokens[++i]);
+        }
+        else if (token.equals("depth"))
+        {
+          depth = Math.max(1, Math.min(MAX_DEPTH, Integer.parseInt(tokens[++i])));
+        }
+      }
+    }
+
+    long timeLeft = board.turn == 1 ? whiteTime : blackTime;
+    long increment = board.turn == 1 ? whiteIncrement : blackIncrement;
+
+    synchronized (holdLock)
+    {
+      holdBestMove = infinite || ponder;
+      pondering = ponder;
+      ponderTimeLeft = timeLeft;
+      ponderIncrement = increment;
+      ponderMovesToGo = movesToGo;
+      ponderMoveTime = moveTime;
+    }
+    if (infinite || ponder)
+    {
+      timeManager.clear();
+    }
+    else
+    {
+      startClock(timeLeft, increment, movesToGo, moveTime);
+    }
+
+    final Board searchBoard = board;
+    // IterativeSearch counts iterations from 0, a one ply search
+    final int maxDepth = depth;
+    searchStart = System.currentTimeMillis();
+    searchThread = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        iterativeSearch.search(searchBoard, maxDepth);
+        waitForRelease();
+        sendBestMove(searchBoard);
+      }
+    }, "UCISearch");
+    searchThread.start();
+  }
+
+  /**
+   * Without a clock or a move time, the search runs to its depth.
+   */
+  private void startClock(long timeLeft, long increment, int movesToGo, long moveTime)
+  {
+    if (moveTime > 0)
+    {
+      timeManager.startFixed(moveTime);
+    }
+    else if (timeLeft > 0)
+    {
+      timeManager.start(timeLeft, increment, movesToGo, board.moveIndex / 2 + 1);
+    }
+    else
+    {
+      timeManager.clear();
+    }
+  }
+
+  private void ponderhit()
+  {
+    synchronized (holdLock)
+    {
+      if (!pondering)
+      {
+        return;
+      }
+      // the search carries on, now against our clock
+      startClock(ponderTimeLeft, ponderIncrement, ponderMovesToGo, ponderMoveTime);
+      pondering = false;
+      holdBestMove = false;
+      holdLock.notifyAll();
+    }
+  }
+
+  private void releaseBestMove()
+  {
+    synchronized (holdLock)
+    {
+      pondering = false;
+      holdBestMove = false;
+      holdLock.notifyAll();
+    }
+  }
+
+  private void waitForRelease()
+  {
+    synchronized (holdLock)
+    {
+      while (holdBestMove)
+      {
+        try
+        {
+          holdLock.wait();
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void stopSearch()
+  {
+    if (searchThread == null)
+    {
+      return;
+    }
+    releaseBestMove();
+    // the search may not have started yet, and would clear a single stop, so keep stopping until it exits
+    while (searchThread.isAlive())
+    {
+      iterativeSearch.stop();
+      try
+      {
+        searchThread.join(10);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    searchThread = null;
+  }
+
+  private void sendBestMove(Board searchBoard)
+  {
+    Move[] pv = iterativeSearch.getPV();
+    String bestMove = pv[0].moved != null ? pv[0].toUCIString() : getAnyLegalMove(searchBoard);
+    if (pv[0].moved != null && pv[1].moved != null)
+    {
+      send("bestmove " + bestMove + " ponder " + pv[1].toUCIString());
+    }
+    else
+    {
+      send("bestmove " + bestMove);
+    }
+  }
+
+  /**
+   * Only used when the search was stopped before it finished its first iteration.
+   */
+  private String getAnyLegalMove(Board searchBoard)
+  {
+    int moveCount = moveGeneration.generateFullMoves(availableMoves, searchBoard);
+    for (int i = 0; i < moveCount; i++)
+    {
+      Move move = availableMoves[i];
+      searchBoard.make(move);
+      Piece king = searchBoard.turn == 1 ? searchBoard.blackKing : searchBoard.whiteKing;
+      boolean legal = !searchBoard.isSquareCheckedByColor(king.square, searchBoard.turn);
+      searchBoard.unmake(move);
+      if (legal)
+      {
+        return move.toUCIString();
+      }
+    }
+    return "0000";
+  }
+
+  public void iterationComplete(int depth, int score, SearchStats stats, Move[] pv)
+  {
+    long time = Math.max(1, System.currentTimeMillis() - searchStart);
+    long nodes = (long) stats.nodes + stats.helperNodes;
+
+    StringBuilder info = new StringBuilder("info depth ").append(depth + 1);
+    if (score > Searcher.MATE - 300)
+    {
+      info.append(" score mate ").append((Searcher.MATE - score + 1) / 2);
+    }
+    else if (score < -Searcher.MATE + 300)
+    {
+      info.append(" score mate -").append((Searcher.MATE + score) / 2);
+    }
+    else
+    {
+      info.append(" score cp ").append(score);
+    }
+    info.append(" nodes ").append(nodes)
+        .append(" nps ").append(nodes * 1000 / time)
+        .append(" time ").append(time)
+        .append(" pv");
+    for (Move move : pv)
+    {
+      if (move.moved == null)
+      {
+        break;
+      }
+      info.append(' ').append(move.toUCIString());
+    }
+    send(info.toString());
+  }
+
+  private void send(String line)
+  {
+    synchronized (out)
+    {
+      out.println(line);
+      out.flush();
+    }
+  }
+}
@@ -2,6 +2,7 @@
 
 package chess.engine.model;
 
+import chess.engine.utils.MagicBitboards;
 import chess.engine.utils.MoveGeneration;
 import chess.engine.search.PositionHashtable;
 import chess.engine.search.BoardEvaluator;
@@ -42,28 +43,19 @@ public class Board {
   // indexed like this:
   public static int ALL_PIECES = 6;
   public static int QUEENS_ROOKS = 7;
-  public static int QUEENS_ROOKS_RL_90 = 8;
-  public static int QUEENS_BISHOPS = 9;
-  public static int QUEENS_BISHOPS_RL_45 = 10;
-  public static int QUEENS_BISHOPS_RR_45 = 11;
+  public static int QUEENS_BISHOPS = 8;
 
   /**
    * <pre>
    *     0     1
    *  [black,white]
-   *   0      1      2      3     4      5      6     7      8      9      10      11
-   * [pawn, knight, bishop, rook, queen, king, all, R/Q 0, R/Q 90, B/Q , B/Q 45, B/Q -45</code>
+   *   0      1      2      3     4      5      6     7     8
+   * [pawn, knight, bishop, rook, queen, king, all, R/Q,  B/Q]</code>
    */
-  public final long[][] pieceBoards = new long[2][12];
+  public final long[][] pieceBoards = new long[2][9];
 
   public long allPieces = 0;
-  public long allPiecesRL90 = 0;
-  public long allPiecesRL45 = 0;
-  public long allPiecesRR45 = 0;
   public long allPawns = 0;
-  public long allPawnsRL90 = 0;
-  public long allPawnsRL45 = 0;
-  public long allPawnsRR45 = 0;
 
   public int materialScore = 0;
   public int pieceValues = 0;
@@ -74,15 +66,31 @@ public class Board {
   public final long[] squareRammers = new long[64];
   public final int[][] attackState = new int[2][64];
 
+  /**
+   * When true, make and unmake leave the attack maps above, and each piece's attacks and rams,
+   * alone.  They are rebuilt by updateAttacks() when something reads them, and kept for each
+   * ply so that coming back up the tree restores them instead of rebuilding them.
+   * isSquareCheckedByColor() doesn't need them in this mode.
+   */
+  public final boolean lazyAttacks;
+  // false once the board has changed since the attack maps were last brought up to date
+  boolean attacksCurrent = true;
+  private final AttackMaps[] attackCache;
+  private static final int ATTACK_CACHE_SIZE = 128;
+
   // keeps board hashes for draw by rep
   public long[] repetitionTable = new long[500];
   public int[] fiftyMoveTable = new int[500];
+  // by moveIndex, the Square.index128 a pawn just passed over, if it can be taken en passent there, else -1
+  public int[] enPassentSquares = new int[500];
 
 
   private static Random random = new Random();
 
 
   private static long[][] pieceHash = new long[16][64];
+  // by file, for a position where an en passent capture can be made
+  private static final long[] enPassentHash = new long[8];
 
   static {
     File zobristData = new File("hashKeys.dat");
@@ -173,12 +181,35 @@ public class Board {
     }
   }
 
-  static final long initialHashValue = (long)(Math.random() * Long.MAX_VALUE);
-  static final long initialPawnHashValue = (long)(Math.random() * Long.MAX_VALUE);
+  static {
+    Random random = new Random(5029414785130391193L);
+    for (int file = 0; file < 8; file++) {
+      enPassentHash[file] = random.nextLong();
+    }
+  }
+
+  // seeded like the piece keys, so searches, and their node counts, repeat from run to run
+  static final long initialHashValue = new Random(3184298210975384301L).nextLong() & Long.MAX_VALUE;
+  static final long initialPawnHashValue = new Random(7712084921603358857L).nextLong() & Long.MAX_VALUE;
 
   public Board() {
+    this(false);
+  }
+
+  /**
+   * @param lazyAttacks build the attack maps on demand instead of on every make and unmake
+   */
+  public Board(boolean lazyAttacks) {
+    this.lazyAttacks = lazyAttacks;
+    attackCache = lazyAttacks ? new AttackMaps[ATTACK_CACHE_SIZE] : null;
+    if (lazyAttacks) {
+      for (int t = 0; t < ATTACK_CACHE_SIZE; t++) {
+        attackCache[t] = new AttackMaps();
+      }
+    }
     hash1 = initialHashValue;
     pawnHash = initialPawnHashValue;
+    Arrays.fill(enPassentSquares, -1);
     for (Square square : Square.values()) {
       boardSquares[square.index128] = new BoardSquare(square);
     }
@@ -211,6 +242,25 @@ public class Board {
     setEPDPosition(epd);
   }
 
+  /**
+   * Creates an independent copy of this board, including the castling stats,
+   * repetition and fifty move history, and en passent state, so that another
+   * thread may search it without touching this one.
+   */
+  public Board copy() {
+    Board board = new Board(lazyAttacks);
+
+    BoardState state = new BoardState();
+    state.save(this);
+    state.restore(board);
+
+    System.arraycopy(repetitionTable, 0, board.repetitionTable, 0, repetitionTable.length);
+    System.arraycopy(fiftyMoveTable, 0, board.fiftyMoveTable, 0, fiftyMoveTable.length);
+    System.arraycopy(enPassentSquares, 0, board.enPassentSquares, 0, enPassentSquares.length);
+
+    return board;
+  }
+
   public static long getStagingKingArea(Square square, int color)
   {
     if(color == 1)
@@ -335,6 +385,33 @@ public class Board {
       }
     }
   }
+  /**
+   * Sets up a full FEN position: the placement, then the optional side to move,
+   * castling rights, en passent square and halfmove clock.
+   */
+  public void setFENPosition(String fen) {
+    String[] fields = fen.trim().split("\\s+");
+    setEPDPosition(fields[0]);
+
+    turn = fields.length > 1 && fields[1].equals("b") ? 0 : 1;
+
+    String castling = fields.length > 2 ? fields[2] : "-";
+    stats.whiteKingsideRookMoves = castling.indexOf('K') > -1 ? 0 : 1;
+    stats.whiteQueensideRookMoves = castling.indexOf('Q') > -1 ? 0 : 1;
+    stats.blackKingsideRookMoves = castling.indexOf('k') > -1 ? 0 : 1;
+    stats.blackQueensideRookMoves = castling.indexOf('q') > -1 ? 0 : 1;
+
+    // the generator looks for the square jumped over by the last double push
+    if (fields.length > 3 && !fields[3].equals("-")) {
+      setEnPassentSquare(Square.valueOf(fields[3].toUpperCase()));
+    }
+
+    if (fields.length > 4) {
+      fiftyMoveTable[moveIndex] = Integer.parseInt(fields[4]);
+    }
+    repetitionTable[moveIndex] = turn == 1 ? hash1 : ~hash1;
+  }
+
   long attackers = 0;
   Square pieceSquare;
   Piece attackingPiece;
@@ -346,9 +423,6 @@ public class Board {
 
 
     allPieces |= square.mask_on;
-    allPiecesRL90 |= square.mask_on_rl90;
-    allPiecesRR45 |= square.mask_on_rr45;
-    allPiecesRL45 |= square.mask_on_rl45;
 
     pieceBoards[piece.color][ALL_PIECES] |= square.mask_on;
     pieceBoards[piece.color][piece.type] |= square.mask_on;
@@ -358,9 +432,6 @@ public class Board {
       case Piece.PAWN : {
         pawnHash ^= pieceHash[piece.type + (piece.color == 1 ? 0 : 6)][square.index64];
         allPawns |= square.mask_on;
-        allPawnsRR45 |= square.mask_on_rr45;
-        allPawnsRL45 |= square.mask_on_rl45;
-        allPawnsRL90 |= square.mask_on_rl90;
         positionScore += piece.color == 1 ? BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64] : -BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64];
         break;
       }
@@ -372,8 +443,6 @@ public class Board {
       }
       case Piece.BISHOP : {
         pieceBoards[piece.color][QUEENS_BISHOPS] |= square.mask_on;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RL_45] |= square.mask_on_rl45;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RR_45] |= square.mask_on_rr45;
         pieceValues += piece.color == 1 ? piece.materialValue : -piece.materialValue;
         positionScore += piece.color == 1 ? BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64] : -BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64];
         materialValue[piece.color] += piece.color == 1 ? piece.materialValue : -piece.materialValue;
@@ -381,7 +450,6 @@ public class Board {
       }
       case Piece.ROOK : {
         pieceBoards[piece.color][QUEENS_ROOKS] |= square.mask_on;
-        pieceBoards[piece.color][QUEENS_ROOKS_RL_90] |= square.mask_on_rl90;
         pieceValues += piece.color == 1 ? piece.materialValue : -piece.materialValue;
         positionScore += piece.color == 1 ? BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64] : -BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64];
         materialValue[piece.color] += piece.color == 1 ? piece.materialValue : -piece.materialValue;
@@ -389,10 +457,7 @@ public class Board {
       }
       case Piece.QUEEN : {
         pieceBoards[piece.color][QUEENS_BISHOPS] |= square.mask_on;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RL_45] |= square.mask_on_rl45;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RR_45] |= square.mask_on_rr45;
         pieceBoards[piece.color][QUEENS_ROOKS] |= square.mask_on;
-        pieceBoards[piece.color][QUEENS_ROOKS_RL_90] |= square.mask_on_rl90;
         pieceValues += piece.color == 1 ? piece.materialValue : -piece.materialValue;
         materialValue[piece.color] += piece.color == 1 ? piece.materialValue : -piece.materialValue;
         break;
@@ -401,6 +466,11 @@ public class Board {
 
     materialScore += piece.value;
 
+    if (lazyAttacks) {
+      attacksCurrent = false;
+      return;
+    }
+
     piece.calculateAttacks(this, square);
 
     attackers = (squareAttackers[square.index64] | squareRammers[square.index64]) &
@@ -417,9 +487,6 @@ public class Board {
   public final void removePieceFromSquare(final Piece piece, final Square square) {
 
     allPieces &= square.mask_off;
-    allPiecesRL90 &= square.mask_off_rl90;
-    allPiecesRR45 &= square.mask_off_rr45;
-    allPiecesRL45 &= square.mask_off_rl45;
 
     pieceBoards[piece.color][ALL_PIECES] &= square.mask_off;
     pieceBoards[piece.color][piece.type] &= square.mask_off;
@@ -429,9 +496,6 @@ public class Board {
       case Piece.PAWN : {
         pawnHash ^= pieceHash[piece.type + (piece.color == 1 ? 0 : 6)][square.index64];
         allPawns &= square.mask_off;
-        allPawnsRR45 &= square.mask_off_rr45;
-        allPawnsRL45 &= square.mask_off_rl45;
-        allPawnsRL90 &= square.mask_off_rl90;
         positionScore -= piece.color == 1 ? BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64] : -BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64];
         break;
       }
@@ -443,8 +507,6 @@ public class Board {
       }
       case Piece.BISHOP : {
         pieceBoards[piece.color][QUEENS_BISHOPS] &= square.mask_off;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RL_45] &= square.mask_off_rl45;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RR_45] &= square.mask_off_rr45;
         pieceValues -= piece.color == 1 ? piece.materialValue : -piece.materialValue;
         positionScore -= piece.color == 1 ? BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64] : -BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64];
         materialValue[piece.color] -= piece.color == 1 ? piece.materialValue : -piece.materialValue;
@@ -452,7 +514,6 @@ public class Board {
       }
       case Piece.ROOK : {
         pieceBoards[piece.color][QUEENS_ROOKS] &= square.mask_off;
-        pieceBoards[piece.color][QUEENS_ROOKS_RL_90] &= square.mask_off_rl90;
         pieceValues -= piece.color == 1 ? piece.materialValue : -piece.materialValue;
         positionScore -= piece.color == 1 ? BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64] : -BoardEvaluator.PIECE_VALUE_TABLES[piece.color][piece.type][square.index64];
         materialValue[piece.color] -= piece.color == 1 ? piece.materialValue : -piece.materialValue;
@@ -460,10 +521,7 @@ public class Board {
       }
       case Piece.QUEEN : {
         pieceBoards[piece.color][QUEENS_BISHOPS] &= square.mask_off;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RL_45] &= square.mask_off_rl45;
-        pieceBoards[piece.color][QUEENS_BISHOPS_RR_45] &= square.mask_off_rr45;
         pieceBoards[piece.color][QUEENS_ROOKS] &= square.mask_off;
-        pieceBoards[piece.color][QUEENS_ROOKS_RL_90] &= square.mask_off_rl90;
         pieceValues -= piece.color == 1 ? piece.materialValue : -piece.materialValue;
         materialValue[piece.color] -= piece.color == 1 ? piece.materialValue : -piece.materialValue;
         break;
@@ -477,6 +535,11 @@ public class Board {
 
 //    if(Piece.DEBUG) System.err.println("Rem " + piece + "  @  " + square);
 
+    if (lazyAttacks) {
+      attacksCurrent = false;
+      return;
+    }
+
     piece.removeAttacks(this, square);
 
     attackers = (squareAttackers[square.index64] | squareRammers[square.index64]) &
@@ -497,21 +560,10 @@ public class Board {
   public class BoardSquare {
     public Square square;
     public Piece piece;
-
-    // Maps the 'pawn up by two' move index128 to a yes or no question.
-    // The question: "On this move, does this square accept en passent captures?"
-    // This is formed as: if(square.enPassentInfo.get(board.moveIndex))
-    public boolean[] enPassentInfo = new boolean[1000];
     public long attackers = 0;
 
     public BoardSquare(Square square) {
       this.square = square;
-
-      // Since this is mapping to moveIndex, we make it large.
-      // It should never have to grow, and never return null.
-      for (int i = 0; i < 1000; i++) {
-        enPassentInfo[i] = false;
-      }
     }
 
     public Piece getPiece() {
@@ -535,7 +587,10 @@ public class Board {
     if(Piece.DEBUG) System.err.println(this);
 */
 
-    // hash move
+    // the en passent right, if any, ends with this move
+    if (enPassentSquares[moveIndex] != -1) {
+      hash1 ^= enPassentHash[enPassentSquares[moveIndex] & 7];
+    }
 
     // remove moving piece
     removePieceFromSquare(move.moved, move.fromSquare);
@@ -544,24 +599,7 @@ public class Board {
     if (move.taken != null) {
       // remove taken piece
       removePieceFromSquare(move.taken, move.takenSquare);
-
-/*
-      if (move.taken.type == Piece.ROOK) {
-        if (move.taken.color == 1) {
-          if (move.taken.kingsideRook) {
-            stats.whiteKingsideRookMoves++;
-          } else if (move.taken.queensideRook) {
-            stats.whiteQueensideRookMoves++;
-          }
-        } else {
-          if (move.taken.kingsideRook) {
-            stats.blackKingsideRookMoves++;
-          } else if (move.taken.queensideRook) {
-            stats.blackQueensideRookMoves++;
-          }
-        }
-      }
-*/
+      updateCastlingForCapture(move.takenSquare, 1);
     }
 
     // make promote
@@ -626,8 +664,9 @@ public class Board {
     moveIndex++;
 
     // set en passent
+    enPassentSquares[moveIndex] = -1;
     if (move.enPassentSquare != null) {
-      boardSquares[move.enPassentSquare.index128].enPassentInfo[moveIndex] = true;
+      setEnPassentSquare(move.enPassentSquare);
     }
     repetitionTable[moveIndex] = turn == 1 ? hash1 : ~hash1;
 
@@ -647,6 +686,11 @@ public class Board {
 
     repetitionTable[moveIndex] = 0;
 
+    // unset en passent
+    if (enPassentSquares[moveIndex] != -1) {
+      hash1 ^= enPassentHash[enPassentSquares[moveIndex] & 7];
+    }
+
     // Rollback stats
     if (move.moved.type == Piece.KING) {
       if (move.moved.color == 1) {
@@ -700,35 +744,166 @@ public class Board {
     // unmake capture
     if (move.taken != null) {
       setPieceOnSquare(move.taken, move.takenSquare);
-/*
-      if (move.taken.type == Piece.ROOK) {
-        if (move.taken.color == 1) {
-          if (move.taken.kingsideRook) {
-            stats.whiteKingsideRookMoves--;
-          } else if (move.taken.queensideRook) {
-            stats.whiteQueensideRookMoves--;
-          }
-        } else {
-          if (move.taken.kingsideRook) {
-            stats.blackKingsideRookMoves--;
-          } else if (move.taken.queensideRook) {
-            stats.blackQueensideRookMoves--;
-          }
-        }
-      }
-*/
+      updateCastlingForCapture(move.takenSquare, -1);
     }
 
     setPieceOnSquare(move.moved, move.fromSquare);
 
+    turn = turn ^ 1;
+    moveIndex--;
 
-    // unset en passent
-    if (move.enPassentSquare != null) {
-      boardSquares[move.enPassentSquare.index128].enPassentInfo[moveIndex] = false;
+    // restore the en passent right this position had
+    if (enPassentSquares[moveIndex] != -1) {
+      hash1 ^= enPassentHash[enPassentSquares[moveIndex] & 7];
     }
+  }
 
-    turn = turn ^ 1;
+  /**
+   * Passes the turn, for null move searches.  Any en passent right is lost.
+   */
+  public final void makeNullMove() {
+    if (enPassentSquares[moveIndex] != -1) {
+      hash1 ^= enPassentHash[enPassentSquares[moveIndex] & 7];
+    }
+    turn ^= 1;
+    moveIndex++;
+    enPassentSquares[moveIndex] = -1;
+    // not zero, so draw detection looks past it, but never equal to a position
+    repetitionTable[moveIndex] = 1;
+    fiftyMoveTable[moveIndex] = fiftyMoveTable[moveIndex - 1] + 1;
+  }
+
+  public final void unmakeNullMove() {
+    repetitionTable[moveIndex] = 0;
+    turn ^= 1;
     moveIndex--;
+    if (enPassentSquares[moveIndex] != -1) {
+      hash1 ^= enPassentHash[enPassentSquares[moveIndex] & 7];
+    }
+  }
+
+  /**
+   * Sets the square a pawn just passed over, or null for none, for the current position.
+   * The right is only kept, and only changes the hash, when a pawn of the side to move
+   * can actually make the capture, so positions that play the same hash the same.
+   */
+  public final void setEnPassentSquare(Square square) {
+    if (enPassentSquares[moveIndex] != -1) {
+      hash1 ^= enPassentHash[enPassentSquares[moveIndex] & 7];
+    }
+    enPassentSquares[moveIndex] = -1;
+    if (square != null && (MoveGeneration.attackVectors[turn][Piece.PAWN][square.index64] & pieceBoards[turn][Piece.PAWN]) != 0) {
+      enPassentSquares[moveIndex] = square.index128;
+      hash1 ^= enPassentHash[square.file];
+    }
+  }
+
+  public final Square getEnPassentSquare() {
+    return enPassentSquares[moveIndex] == -1 ? null : boardSquares[enPassentSquares[moveIndex]].square;
+  }
+
+  /**
+   * Takes back a move for copy-make, by restoring the state saved before it was made.
+   */
+  public final void unmake(Move move, BoardState state) {
+    repetitionTable[moveIndex] = 0;
+    state.restore(this);
+  }
+
+  /**
+   * Whatever is captured on a rook's home square, the rook that could castle from there
+   * is gone or has already moved, so the capture takes that castling right away.
+   */
+  private void updateCastlingForCapture(Square square, int count) {
+    if (square == Square.H1) {
+      stats.whiteKingsideRookMoves += count;
+    } else if (square == Square.A1) {
+      stats.whiteQueensideRookMoves += count;
+    } else if (square == Square.H8) {
+      stats.blackKingsideRookMoves += count;
+    } else if (square == Square.A8) {
+      stats.blackQueensideRookMoves += count;
+    }
+  }
+
+  /**
+   * Brings the attack maps up to date for a lazyAttacks board; does nothing otherwise.
+   * Anything that reads squareAttackers, squareRammers, attackState, attacks, or a piece's
+   * attacks or rams calls this first.
+   */
+  public final void updateAttacks() {
+    if (attacksCurrent) {
+      return;
+    }
+    attacksCurrent = true;
+
+    AttackMaps maps = attackCache[moveIndex & (ATTACK_CACHE_SIZE - 1)];
+    if (maps.hash == hash1 && maps.allPieces == allPieces) {
+      maps.restore(this);
+      return;
+    }
+
+    Arrays.fill(squareAttackers, 0);
+    Arrays.fill(squareRammers, 0);
+    Arrays.fill(attackState[0], 0);
+    Arrays.fill(attackState[1], 0);
+    attacks[0] = 0;
+    attacks[1] = 0;
+    for (Piece piece : pieces) {
+      if (piece.square != null) {
+        piece.attacks = 0;
+        piece.rams = 0;
+        piece.calculateAttacks(this, piece.square);
+      }
+    }
+    maps.save(this);
+  }
+
+  /**
+   * The attack maps of one position.  Piece attacks are kept by square, since the same
+   * position can be reached with like pieces trading places.
+   */
+  private static final class AttackMaps {
+    long hash;
+    long allPieces;
+    final long[] squareAttackers = new long[64];
+    final long[] squareRammers = new long[64];
+    final int[][] attackState = new int[2][64];
+    final long[] attacks = new long[2];
+    final long[] pieceAttacks = new long[64];
+    final long[] pieceRams = new long[64];
+
+    void save(Board board) {
+      hash = board.hash1;
+      allPieces = board.allPieces;
+      System.arraycopy(board.squareAttackers, 0, squareAttackers, 0, 64);
+      System.arraycopy(board.squareRammers, 0, squareRammers, 0, 64);
+      System.arraycopy(board.attackState[0], 0, attackState[0], 0, 64);
+      System.arraycopy(board.attackState[1], 0, attackState[1], 0, 64);
+      attacks[0] = board.attacks[0];
+      attacks[1] = board.attacks[1];
+      for (Piece piece : board.pieces) {
+        if (piece.square != null) {
+          pieceAttacks[piece.square.index64] = piece.attacks;
+          pieceRams[piece.square.index64] = piece.rams;
+        }
+      }
+    }
+
+    void restore(Board board) {
+      System.arraycopy(squareAttackers, 0, board.squareAttackers, 0, 64);
+      System.arraycopy(squareRammers, 0, board.squareRammers, 0, 64);
+      System.arraycopy(attackState[0], 0, board.attackState[0], 0, 64);
+      System.arraycopy(attackState[1], 0, board.attackState[1], 0, 64);
+      board.attacks[0] = attacks[0];
+      board.attacks[1] = attacks[1];
+      for (Piece piece : board.pieces) {
+        if (piece.square != null) {
+          piece.attacks = pieceAttacks[piece.square.index64];
+          piece.rams = pieceRams[piece.square.index64];
+        }
+      }
+    }
   }
 
   public static class Stats {
@@ -759,6 +934,32 @@ public class Board {
     public int originalPawns = 0;
     public int originalPawnsDifference = 0;
 
+    public Stats() {
+    }
+
+    public Stats(Stats stats) {
+      set(stats);
+    }
+
+    public void set(Stats stats) {
+      whiteKingMoves = stats.whiteKingMoves;
+      blackKingMoves = stats.blackKingMoves;
+      whiteCastleFlag = stats.whiteCastleFlag;
+      blackCastleFlag = stats.blackCastleFlag;
+      whiteKingsideRookMoves = stats.whiteKingsideRookMoves;
+      whiteQueensideRookMoves = stats.whiteQueensideRookMoves;
+      blackKingsideRookMoves = stats.blackKingsideRookMoves;
+      blackQueensideRookMoves = stats.blackQueensideRookMoves;
+      whiteAttacking = stats.whiteAttacking;
+      blackAttacking = stats.blackAttacking;
+      System.arraycopy(stats.whitePieceMoves, 0, whitePieceMoves, 0, whitePieceMoves.length);
+      System.arraycopy(stats.blackPieceMoves, 0, blackPieceMoves, 0, blackPieceMoves.length);
+      originalMaterial = stats.originalMaterial;
+      originalMaterialDifference = stats.originalMaterialDifference;
+      originalPawns = stats.originalPawns;
+      originalPawnsDifference = stats.originalPawnsDifference;
+    }
+
     public String toString() {
       return "Stats: castling (" + (whiteCastleFlag == 1 ? "O-O" : (whiteCastleFlag == 2 ? "O-O-O" : (whiteKingsideRookMoves == 0 && whiteQueensideRookMoves == 0 && whitePieceMoves[Piece.KING] == 0 ? "WAIT" : "CEN"))) + " v " + (blackCastleFlag == 1 ? "O-O" : (blackCastleFlag == 2 ? "O-O-O" : (blackKingsideRookMoves == 0 && blackQueensideRookMoves == 0 && blackPieceMoves[Piece.KING] == 0 ? "WAIT" : "CEN"))) + ")" +
               "\n  whitePieceMoves: " + whitePieceMoves + "\n" +
@@ -970,6 +1171,10 @@ public class Board {
   }
 
   public final boolean isSquareCheckedByColor(Square square, int color) {
+    if (lazyAttacks) {
+      return isSquareAttackedByColor(square, color) ||
+              (MoveGeneration.attackVectors[color][Piece.KING][square.index64] & pieceBoards[color][Piece.KING]) != 0;
+    }
     return (squareAttackers[square.index64] & pieceBoards[color][ALL_PIECES]) != 0;
   }
 
@@ -992,28 +1197,25 @@ public class Board {
    * @return
    */
   public final long rookAttacks(int square) {
-    return (MoveGeneration.rook_attacks_r0[square][(int) (allPieces >>> (1 + ((square) & 56))) & 63]) |
-            (MoveGeneration.rook_attacks_rl90[square][(int) (allPiecesRL90 >>> (57 - (((square & 7) << 3) & 56))) & 63]);
+    return MagicBitboards.rookAttacks(square, allPieces);
   }
 
   /**
-   * Returns a bitboard of rook attacks from the given square
+   * Returns a bitboard of rook attacks from the given square, seeing through the given color's rooks and queens
    * @param square Square.index64
    * @return
    */
   public final long rookAttacksXRay(int square, int color) {
-    return (MoveGeneration.rook_attacks_r0[square][(int) ((allPieces ^ pieceBoards[color][QUEENS_ROOKS]) >>> (1 + ((square) & 56))) & 63]) |
-            (MoveGeneration.rook_attacks_rl90[square][(int) ((allPiecesRL90 ^ pieceBoards[color][QUEENS_ROOKS_RL_90]) >>> (57 - (((square & 7) << 3) & 56))) & 63]);
+    return MagicBitboards.rookAttacks(square, allPieces ^ pieceBoards[color][QUEENS_ROOKS]);
   }
 
   /**
-   * Returns a bitboard of rook attacks from the given square
+   * Returns a bitboard of rook attacks from the given square, blocked only by pawns
    * @param square Square.index64
    * @return
    */
   public final long rookPins(int square) {
-    return (MoveGeneration.rook_attacks_r0[square][(int) ((allPawns) >>> (1 + ((square) & 56))) & 63]) |
-            (MoveGeneration.rook_attacks_rl90[square][(int) ((allPawnsRL90) >>> (57 - (((square & 7) << 3) & 56))) & 63]);
+    return MagicBitboards.rookAttacks(square, allPawns);
   }
 
   /**
@@ -1022,18 +1224,16 @@ public class Board {
    * @return
    */
   public final long bishopAttacks(int square) {
-    return (MoveGeneration.bishop_attacks_rr45[square][(int) (allPiecesRR45 >>> (MoveGeneration.bishop_shift_rr45[square])) & 63]) |
-            (MoveGeneration.bishop_attacks_rl45[square][(int) (allPiecesRL45 >>> (MoveGeneration.bishop_shift_rl45[square])) & 63]);
+    return MagicBitboards.bishopAttacks(square, allPieces);
   }
 
   /**
-   * Returns a bitboard of bishop attacks from the given square
+   * Returns a bitboard of bishop attacks from the given square, seeing through the given color's bishops and queens
    * @param square Square.index64
    * @return
    */
   public final long bishopAttacksXRay(int square, int color) {
-    return (MoveGeneration.bishop_attacks_rr45[square][(int) ((allPiecesRR45  ^ pieceBoards[color][QUEENS_BISHOPS_RR_45]) >>> (MoveGeneration.bishop_shift_rr45[square])) & 63]) |
-            (MoveGeneration.bishop_attacks_rl45[square][(int) ((allPiecesRL45 ^ pieceBoards[color][QUEENS_BISHOPS_RL_45]) >>> (MoveGeneration.bishop_shift_rl45[square])) & 63]);
+    return MagicBitboards.bishopAttacks(square, allPieces ^ pieceBoards[color][QUEENS_BISHOPS]);
   }
 
   /**
@@ -1042,51 +1242,23 @@ public class Board {
    * @return
    */
   public final long bishopPins(int square) {
-    return (MoveGeneration.bishop_attacks_rr45[square][(int) ((allPawnsRR45) >>> (MoveGeneration.bishop_shift_rr45[square])) & 63]) |
-            (MoveGeneration.bishop_attacks_rl45[square][(int) ((allPawnsRL45) >>> (MoveGeneration.bishop_shift_rl45[square])) & 63]);
-  }
-
-  public final long attacksRank(int a) {
-    return MoveGeneration.rook_attacks_r0[a][(int) (allPieces >>> (1 + ((a) & 56))) & 63];
-  }
-
-  public final long attacksFile(int a) {
-    return MoveGeneration.rook_attacks_rl90[a][(int) (allPiecesRL90 >>> (57 - (((a & 7) << 3) & 56))) & 63];
-  }
-
-  public final long attacksDiaga1(int a) {
-    return MoveGeneration.bishop_attacks_rr45[a][(int) (allPiecesRR45 >>> (MoveGeneration.bishop_shift_rr45[a])) & 63];
-  }
-
-  public final long attacksDiagh1(int a) {
-    return MoveGeneration.bishop_attacks_rl45[a][(int) (allPiecesRL45 >>> (MoveGeneration.bishop_shift_rl45[a])) & 63];
+    return MagicBitboards.bishopAttacks(square, allPawns);
   }
 
-
   public final long rookMobility(int a) {
-    return (MoveGeneration.rook_mobility_r0[a][(int) (allPieces >>> (1 + ((a) & 56))) & 63]) +
-            (MoveGeneration.rook_mobility_rl90[a][(int) (allPiecesRL90 >>> (57 - (((a & 7) << 3) & 56))) & 63]);
+    return Long.bitCount(MagicBitboards.rookAttacks(a, allPieces));
   }
 
   public final long bishopMobility(int a) {
-    return (MoveGeneration.bishop_mobility_rr45[a][(int) (allPawnsRR45 >>> (MoveGeneration.bishop_shift_rr45[a])) & 63]) +
-            (MoveGeneration.bishop_mobility_rl45[a][(int) (allPawnsRL45 >>> (MoveGeneration.bishop_shift_rl45[a])) & 63]);
+    return Long.bitCount(MagicBitboards.bishopAttacks(a, allPawns));
   }
 
   public final long mobilityRank(int a) {
-    return MoveGeneration.rook_mobility_r0[a][(int) (allPawns >>> (1 + ((a) & 56))) & 63];
+    return Long.bitCount(MagicBitboards.rookAttacks(a, allPawns) & (0xFFL << (a & 56)));
   }
 
   public final long mobilityFile(int a) {
-    return MoveGeneration.rook_mobility_rl90[a][(int) (allPawnsRL90 >>> (57 - (((a & 7) << 3) & 56))) & 63];
-  }
-
-  public final long mobilityDiaga1(int a) {
-    return MoveGeneration.bishop_mobility_rr45[a][(int) (allPawnsRR45 >>> (MoveGeneration.bishop_shift_rr45[a])) & 63];
-  }
-
-  public final long mobilityDiagh1(int a) {
-    return MoveGeneration.bishop_mobility_rl45[a][(int) (allPawnsRL45 >>> (MoveGeneration.bishop_shift_rl45[a])) & 63];
+    return Long.bitCount(MagicBitboards.rookAttacks(a, allPawns) & (0x0101010101010101L << (a & 7)));
   }
 
   public static final int rank(int a) {
@@ -0,0 +1,146 @@
+/* $Id$ */
+
+package chess.engine.model;
+
+/**
+ * Everything make() changes on a board, held in primitive arrays, so a search can use
+ * copy-make: save the state once per ply, then after each move restore it with
+ * Board.unmake(Move, BoardState) instead of reversing the move piece by piece.
+ *
+ * Pieces are kept by Piece.index, so a state restores onto the board it was saved from,
+ * or onto a new Board, which is how Board.copy() works.  The attack maps are left out
+ * for a lazyAttacks board, which keeps its own per ply copies.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public final class BoardState {
+  private static final int PIECES = 32;
+
+  // by Piece.index; the square is a Square.index64, or -1 off the board
+  private final int[] pieceSquares = new int[PIECES];
+  private final int[] pieceTypes = new int[PIECES];
+  private final int[] pieceColors = new int[PIECES];
+  // 1 queenside rook, 2 kingside rook
+  private final int[] pieceRooks = new int[PIECES];
+  private final int[] pieceMoveCounts = new int[PIECES];
+  private final long[] pieceAttacks = new long[PIECES];
+  private final long[] pieceRams = new long[PIECES];
+  private int whiteKing;
+  private int blackKing;
+
+  private final long[][] pieceBoards = new long[2][9];
+  private long allPieces;
+  private long allPawns;
+  private long hash1;
+  private long pawnHash;
+  private int materialScore;
+  private int pieceValues;
+  private int positionScore;
+  private final int[] materialValue = new int[2];
+  private int turn;
+  private int moveIndex;
+  private final Board.Stats stats = new Board.Stats();
+
+  private final long[] attacks = new long[2];
+  private final long[] squareAttackers = new long[64];
+  private final long[] squareRammers = new long[64];
+  private final int[][] attackState = new int[2][64];
+
+  public void save(Board board) {
+    for (int i = 0; i < PIECES; i++) {
+      Piece piece = board.pieces[i];
+      pieceSquares[i] = piece.square == null ? -1 : piece.square.index64;
+      pieceTypes[i] = piece.type;
+      pieceColors[i] = piece.color;
+      pieceRooks[i] = (piece.queensideRook ? 1 : 0) | (piece.kingsideRook ? 2 : 0);
+      pieceMoveCounts[i] = piece.moveCount;
+      pieceAttacks[i] = piece.attacks;
+      pieceRams[i] = piece.rams;
+    }
+    whiteKing = board.whiteKing == null ? -1 : board.whiteKing.index;
+    blackKing = board.blackKing == null ? -1 : board.blackKing.index;
+
+    System.arraycopy(board.pieceBoards[0], 0, pieceBoards[0], 0, 9);
+    System.arraycopy(board.pieceBoards[1], 0, pieceBoards[1], 0, 9);
+    allPieces = board.allPieces;
+    allPawns = board.allPawns;
+    hash1 = board.hash1;
+    pawnHash = board.pawnHash;
+    materialScore = board.materialScore;
+    pieceValues = board.pieceValues;
+    positionScore = board.positionScore;
+    materialValue[0] = board.materialValue[0];
+    materialValue[1] = board.materialValue[1];
+    turn = board.turn;
+    moveIndex = board.moveIndex;
+    stats.set(board.stats);
+
+    if (!board.lazyAttacks) {
+      attacks[0] = board.attacks[0];
+      attacks[1] = board.attacks[1];
+      System.arraycopy(board.squareAttackers, 0, squareAttackers, 0, 64);
+      System.arraycopy(board.squareRammers, 0, squareRammers, 0, 64);
+      System.arraycopy(board.attackState[0], 0, attackState[0], 0, 64);
+      System.arraycopy(board.attackState[1], 0, attackState[1], 0, 64);
+    }
+  }
+
+  public void restore(Board board) {
+    // empty the squares in use now, then put every piece back
+    long occupied = board.allPieces;
+    while (occupied != 0) {
+      int square = Long.numberOfTrailingZeros(occupied);
+      occupied &= occupied - 1;
+      board.boardSquares[Board.SQUARES[square].index128].piece = null;
+    }
+    for (int i = 0; i < PIECES; i++) {
+      Piece piece = board.pieces[i];
+      if (piece.type != pieceTypes[i] || piece.color != pieceColors[i]) {
+        piece.type = pieceTypes[i];
+        piece.color = pieceColors[i];
+        piece.value = piece.getValue();
+        piece.materialValue = piece.getMaterialValue();
+      }
+      piece.queensideRook = (pieceRooks[i] & 1) != 0;
+      piece.kingsideRook = (pieceRooks[i] & 2) != 0;
+      piece.moveCount = pieceMoveCounts[i];
+      piece.attacks = pieceAttacks[i];
+      piece.rams = pieceRams[i];
+      if (pieceSquares[i] < 0) {
+        piece.square = null;
+      } else {
+        piece.square = Board.SQUARES[pieceSquares[i]];
+        board.boardSquares[piece.square.index128].piece = piece;
+      }
+    }
+    board.whiteKing = whiteKing < 0 ? null : board.pieces[whiteKing];
+    board.blackKing = blackKing < 0 ? null : board.pieces[blackKing];
+
+    System.arraycopy(pieceBoards[0], 0, board.pieceBoards[0], 0, 9);
+    System.arraycopy(pieceBoards[1], 0, board.pieceBoards[1], 0, 9);
+    board.allPieces = allPieces;
+    board.allPawns = allPawns;
+    board.hash1 = hash1;
+    board.pawnHash = pawnHash;
+    board.materialScore = materialScore;
+    board.pieceValues = pieceValues;
+    board.positionScore = positionScore;
+    board.materialValue[0] = materialValue[0];
+    board.materialValue[1] = materialValue[1];
+    board.turn = turn;
+    board.moveIndex = moveIndex;
+    board.stats.set(stats);
+
+    if (board.lazyAttacks) {
+      board.attacksCurrent = false;
+    } else {
+      board.attacks[0] = attacks[0];
+      board.attacks[1] = attacks[1];
+      System.arraycopy(squareAttackers, 0, board.squareAttackers, 0, 64);
+      System.arraycopy(squareRammers, 0, board.squareRammers, 0, 64);
+      System.arraycopy(attackState[0], 0, board.attackState[0], 0, 64);
+      System.arraycopy(attackState[1], 0, board.attackState[1], 0, 64);
+    }
+  }
+}
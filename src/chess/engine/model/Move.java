@@ -14,6 +14,8 @@ public final class Move
 {
   public static final int CAPTURE_SCORE = (ABSearch.INFINITY - 40000);
   public static final int PROMOTE_SCORE = (ABSearch.INFINITY - 55000);
+  // see encode()
+  public static final int CAPTURE_FLAG = 1 << 15;
   public boolean check;
 
   public Square fromSquare;
@@ -227,6 +229,21 @@ public final class Move
          .append((promoteTo != -1 ? "=" + Piece.toString(promoteTo, moved.color) : "")).toString();
   }
 
+  /**
+   * Long algebraic notation as UCI wants it, e.g. e2e4, e1g1, e7e8q.
+   */
+  public String toUCIString()
+  {
+    if(moved == null)
+    {
+      return "0000";
+    }
+
+    return new StringBuilder(fromSquare.toString().toLowerCase())
+         .append(toSquare.toString().toLowerCase())
+         .append(promoteTo != -1 ? Piece.toString(promoteTo, 0) : "").toString();
+  }
+
   public static String toString(Move[] moves)
   {
     return Move.toString(moves, 0);
@@ -286,6 +303,95 @@ public final class Move
            promoteTo == move.promoteTo;
   }
 
+  /**
+   * Encodes this move in 16 bits: from square (6), to square (6), promotion (3) and
+   * a capture flag.  The pieces involved are implied by the board the move is decoded
+   * against; the flag keeps a quiet killer from matching a capture in a sibling position.
+   *
+   * @return the encoded move, or 0 for a null move
+   */
+  public int encode()
+  {
+    if(moved == null)
+    {
+      return 0;
+    }
+    return fromSquare.index64 | (toSquare.index64 << 6) | ((promoteTo + 1) << 12) | (taken != null ? CAPTURE_FLAG : 0);
+  }
+
+  /**
+   * Rebuilds an encoded move against the given board.  If the move cannot be
+   * made by the side to move, this becomes a null move.
+   *
+   * @return true if the move was rebuilt
+   */
+  public boolean decode(Board board, int encoded)
+  {
+    Square from = Board.SQUARES[encoded & 63];
+    Square to = Board.SQUARES[(encoded >>> 6) & 63];
+    int promote = ((encoded >>> 12) & 7) - 1;
+
+    Piece piece = from != to ? board.boardSquares[from.index128].piece : null;
+    Piece target = board.boardSquares[to.index128].piece;
+    if(piece == null || piece.color != board.turn || (target != null && target.color == piece.color))
+    {
+      reset();
+      return false;
+    }
+
+    if(piece.type == Piece.PAWN)
+    {
+      if(promote != -1)
+      {
+        reset(from, to, piece, to, target, promote);
+      }
+      else if(from.file != to.file && target == null)
+      {
+        Square takenSquare = Board.SQUARES[(from.rank * 8) + to.file];
+        Piece enPassent = board.boardSquares[takenSquare.index128].piece;
+        if(enPassent == null || enPassent.type != Piece.PAWN || enPassent.color == piece.color)
+        {
+          reset();
+          return false;
+        }
+        reset(from, to, takenSquare, piece, enPassent);
+      }
+      else if(target != null)
+      {
+        reset(from, to, to, piece, target);
+      }
+      else if(Math.abs(to.rank - from.rank) == 2)
+      {
+        reset(from, to, piece, Board.SQUARES[(((from.rank + to.rank) / 2) * 8) + from.file]);
+      }
+      else
+      {
+        reset(from, to, piece);
+      }
+    }
+    else if(piece.type == Piece.KING && Math.abs(to.file - from.file) == 2)
+    {
+      Square rookFrom = Board.SQUARES[(from.rank * 8) + (to.file > from.file ? Constants.FILE_H : Constants.FILE_A)];
+      Square rookTo = Board.SQUARES[(from.rank * 8) + (to.file > from.file ? Constants.FILE_F : Constants.FILE_D)];
+      Piece rook = board.boardSquares[rookFrom.index128].piece;
+      if(rook == null || rook.type != Piece.ROOK || rook.color != piece.color)
+      {
+        reset();
+        return false;
+      }
+      reset(from, to, piece, rook, rookFrom, rookTo);
+    }
+    else if(target != null)
+    {
+      reset(from, to, to, piece, target);
+    }
+    else
+    {
+      reset(from, to, piece);
+    }
+    return true;
+  }
+
 /*
   public static int SHIFT_1024 = 11;
   public static int SHIFT_128 = 8;
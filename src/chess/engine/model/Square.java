@@ -2,8 +2,6 @@
 
 package chess.engine.model;
 
-import chess.engine.utils.MoveGeneration;
-
 /**
  * @author Joshua Levine <levinester@gmail.com>
  * @version $Revision$ $Name$ $Date$
@@ -25,13 +23,7 @@ public enum Square
   public int file;
   public int color;
   public long mask_on;
-  public long mask_on_rl90;
-  public long mask_on_rl45;
-  public long mask_on_rr45;
   public long mask_off;
-  public long mask_off_rl90;
-  public long mask_off_rl45;
-  public long mask_off_rr45;
 
   public long[] kingArea = new long[2];
 
@@ -52,14 +44,8 @@ public enum Square
 
     index64 = (rank * 8) + file;
     mask_on = 1L << index64;
-    mask_on_rl90 = (1L << 63) >>> MoveGeneration.init_l90[index64];
-    mask_on_rl45 = (1L << 63) >>> MoveGeneration.init_l45[index64];
-    mask_on_rr45 = (1L << 63) >>> MoveGeneration.init_r45[index64];
 
     mask_off = ~mask_on;
-    mask_off_rl90 = ~mask_on_rl90;
-    mask_off_rl45 = ~mask_on_rl45;
-    mask_off_rr45 = ~mask_on_rr45;
     
     assert Long.numberOfTrailingZeros(mask_on) == index64;
     assert 64 - Long.numberOfTrailingZeros(mask_on) == index64;
@@ -3,6 +3,7 @@
 package chess.engine.search;
 
 import chess.engine.model.Board;
+import chess.engine.model.BoardState;
 import chess.engine.model.Move;
 import chess.engine.model.Piece;
 import chess.engine.model.Square;
@@ -20,13 +21,55 @@ public class ABSearch implements Searcher
   private static final int EXTEND_CHECK = 75;
   private static final int EXTEND_RECAPTURE = 125;
   private static final int EXTEND_PAWN_PUSH = 125;
+  private static final int EXTEND_SINGULAR = 125;
   private static final int PLY_SIZE = 250;
 
+  // reverse futility: a null window node this shallow with its static score this far above beta
+  // is cut off, by depth in plies
+  private static final int[] REVERSE_FUTILITY_MARGIN = {0, 150, 300, 450};
+  // ProbCut: from this depth, a capture that beats beta by the margin at reduced depth cuts off
+  private static final int PROBCUT_DEPTH = 5 * PLY_SIZE;
+  private static final int PROBCUT_REDUCTION = 4 * PLY_SIZE;
+  private static final int PROBCUT_MARGIN = 200;
+
+  // singular extensions are tried from this depth, with a margin under the hash score per ply of depth
+  private static final int SINGULAR_DEPTH = 4 * PLY_SIZE;
+  private static final int SINGULAR_MARGIN = 4;
+
   private static final int REDUCE_PRUNE = -1000;
   private static final int REDUCE_FUTILE = -300;
   private static final int REDUCE_DEFAULT = -75;
   private static final int REDUCE_BORING = -25;
 
+  // half the first root window around the last iteration's score, and the depth it starts at
+  private static final int ASPIRATION_WINDOW = 40;
+  private static final int ASPIRATION_DEPTH = 3;
+
+  // late move reductions, by depth in plies and move number, in PLY_SIZE units
+  private static final int[][] LATE_MOVE_REDUCTIONS = new int[64][64];
+  // moves searched at full depth before the table is used
+  private static final int LATE_MOVES = 2;
+
+  static
+  {
+    for (int depth = 1; depth < 64; depth++)
+    {
+      for (int moveCount = 1; moveCount < 64; moveCount++)
+      {
+        LATE_MOVE_REDUCTIONS[depth][moveCount] = (int) (PLY_SIZE * (0.5 + Math.log(depth) * Math.log(moveCount) / 3));
+      }
+    }
+  }
+
+  // added to the history of the quiet move that last refuted the move before it
+  private static final int COUNTER_MOVE_SCORE = MoveHistory.MAX;
+  // capture history is divided down to at most a pawn's worth of MVV-LVA ordering
+  private static final int CAPTURE_HISTORY_SCALE = 8;
+
+  // the clock is read once every this many nodes, less one, well under a millisecond apart
+  // at the speeds we search, so a stop lands within a few milliseconds of its limit
+  private static final int TIME_CHECK_NODES = 63;
+
   private static final int MAX_EXTENSIONS = 10;
   private static final int MAX_REDUCTIONS = 10;
   private static final int THREAT_INDICATOR = 120;
@@ -36,17 +79,26 @@ public class ABSearch implements Searcher
   private static boolean debug = false;
   private BoardEvaluator eval;
   private MoveGeneration moveGeneration;
-  private PositionHashtable abHashtable = new PositionHashtable();
+  private PositionHashtable abHashtable;
+  // a shared table is aged by the search that owns it
+  private boolean sharedHashtable;
 
   public int searchExtensions;
   public int searchReductions;
 
   public SearchStats stats;
 
-  // indexed as [fromSquare.index64][toSquare.index64]
-  public int[][] moveHistory = new int[64][64];
-
-  private Move NULL_MOVE = new Move();
+  // orders the quiet moves
+  final MoveHistory history = new MoveHistory();
+  // the quiet moves searched so far at each ply, from MoveHistory.pack()
+  private int[][] quietsTried = new int[128][128];
+  // and the captures, from MoveHistory.packCapture()
+  private int[][] capturesTried = new int[128][128];
+  // parallel to moveLists, nextMove() has looked at the move's SEE
+  private boolean[][] swapChecked = new boolean[128][128];
+
+  // ends currentLine, never written to
+  private final Move NULL_MOVE = new Move();
   private boolean running = false;
   private boolean inPawnEnding = false;
   private static final int[] MARGIN = {   50,   50,   50,   75,   75,
@@ -79,16 +131,20 @@ public class ABSearch implements Searcher
 
   public void reset()
   {
-    abHashtable.age();
+    if(!sharedHashtable)
+    {
+      abHashtable.age();
+    }
     kingSafety = new int[2][128];
-    moveHistory = new int[64][64];
+    history.clear();
     eval.reset();
     for(int i = 2;i < killer1.length;i++) {
-      killer1[i].reset(killer1[i-2]);
-      killer2[i].reset(killer2[i-2]);
-      killer3[i].reset(killer3[i-2]);
+      killer1[i] = killer1[i-2];
+      killer2[i] = killer2[i-2];
+      killer3[i] = killer3[i-2];
     }
     done = false;
+    lastScore = NO_SCORE;
   }
 
   public SearchStats getStats()
@@ -103,41 +159,171 @@ public class ABSearch implements Searcher
   }
 
 
+  // the score of the last completed iteration, the center of the next one's window
+  private static final int NO_SCORE = Integer.MIN_VALUE;
+  private int lastScore = NO_SCORE;
+
   /* read write */
   public volatile boolean done = true;
   public volatile boolean researchAtRoot = false;
-  /* read only please */
-  public Move[][] pv = new Move[128][128];
+  // the root is being searched again with a wider aspiration window
+  public volatile boolean researchWindow = false;
+  // the first root move this iteration scored below the window, the time manager gives it longer
+  private boolean rootFailingLow = false;
+  private TimeManager timeManager;
+  /* read only please, encoded moves (Move.encode()), 0 terminated */
+  public int[][] pv = new int[128][128];
+  // pv[0] decoded against the root position, for getPV()
+  private Move[] rootPV = Move.createMoves(128);
   /* read only please */
   private Move[] currentLine = Move.createMoves(128);
 
-  private Move[] killer1 = Move.createMoves(128);
-  private Move[] killer2 = Move.createMoves(128);
-  private Move[] killer3 = Move.createMoves(128);
+  // encoded like the pv, 0 for none
+  int[] killer1 = new int[128];
+  int[] killer2 = new int[128];
+  int[] killer3 = new int[128];
   private boolean[] inCheck = new boolean[128];
   private int[][] kingSafety = new int[2][128];
 
   public Move[] getPV()
   {
-    return pv[0];
+    return rootPV;
+  }
+
+  /**
+   * Decodes the root line by playing it out on the board and taking it back.
+   */
+  private void updateRootPV(Board board, int score)
+  {
+    int count = 0;
+    while (count < rootPV.length - 1 && pv[0][count] != 0 && rootPV[count].decode(board, pv[0][count]))
+    {
+      board.make(rootPV[count]);
+      rootPV[count].check = board.isSquareCheckedByColor(board.turn == 1 ? board.whiteKing.square : board.blackKing.square, board.turn ^ 1);
+      ++count;
+    }
+    for (int i = count - 1; i >= 0; i--)
+    {
+      board.unmake(rootPV[i]);
+    }
+    rootPV[count].reset();
+    // the terminator carries the score too, so Move.toString() can mark mates
+    rootPV[count].score = score;
+    rootPV[0].score = score;
   }
 
 
   private Move[][] moveLists = new Move[128][128];
+  private MovePicker[] movePickers = new MovePicker[128];
+  // probes decode into a per ply entry, which stays valid through the recursion
+  private PositionHashtable.HashEntry[] hashEntries = new PositionHashtable.HashEntry[128];
+  // the hash move a singular extension's verification search leaves out, by ply, 0 for none
+  private int[] excludedMoves = new int[128];
+  // the verification search probes into these, so the node's own entry stays as it was
+  private PositionHashtable.HashEntry[] excludedEntries = new PositionHashtable.HashEntry[128];
   private int[][] extensions = new int[64][64];
+  // with copy-make, the board as it was at each ply before its moves were made
+  private BoardState[] boardStates = new BoardState[128];
+  private boolean copyMake = false;
+  private boolean lateMoveReductions = false;
 
 
   private int ply;
 
   public ABSearch(MoveGeneration moveGeneration, BoardEvaluator eval)
+  {
+    this(moveGeneration, eval, new PositionHashtable());
+    sharedHashtable = false;
+  }
+
+  /**
+   * Creates a search that probes and stores into a table owned by another search,
+   * as the helper threads of a ParallelSearch do.
+   */
+  public ABSearch(MoveGeneration moveGeneration, BoardEvaluator eval, PositionHashtable abHashtable)
   {
     this.moveGeneration = moveGeneration;
     this.eval = eval;
+    this.abHashtable = abHashtable;
+    sharedHashtable = true;
 
     for (int i = 0; i < 128; i++)
     {
       moveLists[i] = Move.createMoves(128);
-      pv[i] = Move.createMoves(128);
+      movePickers[i] = new MovePicker(this, moveGeneration, moveLists[i]);
+      hashEntries[i] = new PositionHashtable.HashEntry();
+      excludedEntries[i] = new PositionHashtable.HashEntry();
+      boardStates[i] = new BoardState();
+    }
+  }
+
+  /**
+   * Chooses copy-make, saving the board once per ply and restoring it after each move,
+   * instead of make/unmake.  Both search the same tree.
+   */
+  public void setCopyMake(boolean copyMake)
+  {
+    this.copyMake = copyMake;
+  }
+
+  public boolean isCopyMake()
+  {
+    return copyMake;
+  }
+
+  /**
+   * Chooses late move reductions from LATE_MOVE_REDUCTIONS, by depth and move number and
+   * adjusted by history, instead of the fixed REDUCE_DEFAULT and REDUCE_BORING.  Those are
+   * still used near the leaves, where the table's reduction is capped to nothing.  A reduced
+   * move that fails high is searched again at full depth.  Futility pruning is the same
+   * either way.
+   */
+  public void setLateMoveReductions(boolean lateMoveReductions)
+  {
+    this.lateMoveReductions = lateMoveReductions;
+  }
+
+  public boolean isLateMoveReductions()
+  {
+    return lateMoveReductions;
+  }
+
+  public void setTimeManager(TimeManager timeManager)
+  {
+    this.timeManager = timeManager;
+  }
+
+  /**
+   * Stops the search once the time manager says so.  Called as nodes are counted.
+   */
+  private void checkTime()
+  {
+    if ((stats.nodes & TIME_CHECK_NODES) == 0 && timeManager != null && timeManager.checkTime(rootFailingLow))
+    {
+      done = true;
+    }
+  }
+
+  private void saveState(Board board)
+  {
+    if (copyMake)
+    {
+      boardStates[ply].save(board);
+    }
+  }
+
+  /**
+   * Takes back a move made at the current ply.
+   */
+  private void unmake(Board board, Move move)
+  {
+    if (copyMake)
+    {
+      board.unmake(move, boardStates[ply]);
+    }
+    else
+    {
+      board.unmake(move);
     }
   }
 
@@ -157,13 +343,58 @@ public class ABSearch implements Searcher
     searchExtensions = 0;
     running = true;
     inPawnEnding = board.pieceValues == 0;
+    rootFailingLow = false;
+    stats.bestMoveNodes = 0;
 
     long start = System.currentTimeMillis();
 
     ply = 0;
     inCheck[ply] = board.isSquareCheckedByColor(board.turn == 1 ? board.whiteKing.square : board.blackKing.square, board.turn ^ 1);
-    int score = rootSearch(-MATE, MATE, depth * PLY_SIZE, board);
+    int score;
+    if (depth < ASPIRATION_DEPTH || lastScore == NO_SCORE || Math.abs(lastScore) > MATE - 300)
+    {
+      score = rootSearch(-MATE, MATE, depth * PLY_SIZE, board);
+    }
+    else
+    {
+      // Search a window around the last score, widening the side that fails,
+      // further each time, until the score lands inside it
+      int window = ASPIRATION_WINDOW;
+      int alpha = lastScore - window;
+      int beta = lastScore + window;
+      while (true)
+      {
+        score = rootSearch(alpha, beta, depth * PLY_SIZE, board);
+        if (done)
+        {
+          break;
+        }
+        if (score <= alpha)
+        {
+          ++stats.aspirationFailLows;
+          researchWindow = true;
+          window *= 2;
+          alpha = Math.max(-MATE, score - window);
+        }
+        else if (score >= beta)
+        {
+          ++stats.aspirationFailHighs;
+          researchWindow = true;
+          window *= 2;
+          beta = Math.min(MATE, score + window);
+        }
+        else
+        {
+          break;
+        }
+      }
+    }
     researchAtRoot = false;
+    researchWindow = false;
+    if (!done)
+    {
+      lastScore = score;
+    }
 
     long time = System.currentTimeMillis() - start;
 
@@ -206,7 +437,7 @@ public class ABSearch implements Searcher
 
     // Hash Probe
     boolean mateThreat = false;
-    PositionHashtable.HashEntry hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1);
+    PositionHashtable.HashEntry hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1, hashEntries[ply]);
 
     if(hashEntry != null)
     {
@@ -237,6 +468,7 @@ public class ABSearch implements Searcher
     ////////////////////////////////////////////////////////
     int moveCount = 0;
 
+    saveState(board);
     for (int moveIndex = 0; moveIndex < movesGenerated; ++moveIndex)
     {
       nextMove(board, moveList, moveIndex, hashEntry);
@@ -252,18 +484,18 @@ public class ABSearch implements Searcher
                                        board.blackKing.square :
                                        board.whiteKing.square, board.turn))
       {
-        board.unmake(move);
+        unmake(board, move);
         continue;
       }
 
-      currentLine[ply].reset(move);
-      currentLine[ply + 1].moved = null;
+      currentLine[ply] = move;
+      currentLine[ply + 1] = NULL_MOVE;
 
       // if no check, count this move, and then recurse
       ++moveCount;
 
       ++ply;
-      pv[ply][ply].moved = null;
+      pv[ply][ply] = 0;
 
       if(board.pieceBoards[0][Piece.QUEEN] != 0) {
         kingSafety[0][ply] = eval.scoreAttackingPieces(board, board.whiteKing.square, 0);
@@ -278,6 +510,8 @@ public class ABSearch implements Searcher
         kingSafety[1][ply] = 0;
       }
 
+      // the pawn push extension reads the attack maps
+      board.updateAttacks();
       int extend = 0;
       inCheck[ply] = board.isSquareCheckedByColor(board.turn == 1 ? board.whiteKing.square : board.blackKing.square, board.turn ^ 1);
       if (searchExtensions < MAX_EXTENSIONS && extensions[move.fromSquare.index64][move.toSquare.index64] == 0)
@@ -311,6 +545,7 @@ public class ABSearch implements Searcher
       extensions[move.fromSquare.index64][move.toSquare.index64] += extend / PLY_SIZE;
       searchExtensions += extend / PLY_SIZE;
 
+      int moveNodes = stats.nodes;
       if(!pvFound)
       {
         score = -abSearch(-beta, -alpha, (depth - PLY_SIZE) + extend, board, true);
@@ -319,7 +554,7 @@ public class ABSearch implements Searcher
       {
         score = -abSearch(-alpha-1, -alpha, (depth - PLY_SIZE) + extend, board, true);
         //score = -zwSearch(1-beta, (depth - 1) + extend, board, true, true);
-        if (score > alpha && score <= beta)
+        if (score > alpha && score < beta)
         {
           researchAtRoot = true;
           score = -abSearch(-beta, -alpha, (depth - PLY_SIZE) + extend, board, true);
@@ -341,29 +576,42 @@ public class ABSearch implements Searcher
 
 
       ply--;
-      currentLine[ply].check = move.check = inCheck[ply+1];
+      move.check = inCheck[ply+1];
 
       // unmake move
-      board.unmake(move);
+      unmake(board, move);
 
       if (score > alpha && !done)
       {
         move.score = score;
-        pv[ply][ply].reset(move);
+        pv[ply][ply] = move.encode();
 
-        int t = ply + 1;
-        pv[ply][t].reset(pv[ply + 1][t]);
-        while (pv[ply + 1][t++].moved != null)
+        int t = ply;
+        do
         {
-          pv[ply][t].reset(pv[ply + 1][t]);
+          ++t;
+          pv[ply][t] = pv[ply + 1][t];
         }
+        while (pv[ply][t] != 0);
 
         alpha = score;
         pvFound = true;
+        updateRootPV(board, score);
+        stats.bestMoveNodes = stats.nodes - moveNodes;
+
+        // fails high on an aspiration window; search() will widen it
+        if (alpha >= beta)
+        {
+          break;
+        }
       }
-      else if(score < alpha - 100 && move.taken == null)
+      else if(score < alpha - 100 && move.taken == null && move.promoteTo == -1)
       {
-        moveHistory[move.moved.type][move.toSquare.index64] --;
+        history.update(board.turn, MoveHistory.pack(move), MoveHistory.NONE, MoveHistory.NONE, -historyBonus(depth));
+      }
+      if (!pvFound)
+      {
+        rootFailingLow = true;
       }
     }
 
@@ -373,9 +621,10 @@ public class ABSearch implements Searcher
 
     if (!done)
     {
+      stats.rootMoves = moveCount;
       if (moveCount == 0)
       {
-        pv[ply][ply].reset(NULL_MOVE);
+        pv[ply][ply] = 0;
         if (inCheck[ply])
         {
           alpha = -MATE + ply;
@@ -388,9 +637,11 @@ public class ABSearch implements Searcher
       }
       else
       {
-        abHashtable.putEntry(depth / PLY_SIZE, !pvFound ? PositionHashtable.UPPER_BOUND : PositionHashtable.EXACT_VALUE, alpha, whiteToMove ? board.hash1 : ~board.hash1, pv[ply][ply], mateThreat);
+        abHashtable.putEntry(depth / PLY_SIZE,
+                             !pvFound ? PositionHashtable.UPPER_BOUND : alpha >= beta ? PositionHashtable.LOWER_BOUND : PositionHashtable.EXACT_VALUE,
+                             alpha, whiteToMove ? board.hash1 : ~board.hash1, pv[ply][ply], mateThreat);
       }
-      pv[ply][ply].score = alpha;
+      updateRootPV(board, alpha);
     }
 
     return alpha;
@@ -429,6 +680,7 @@ public class ABSearch implements Searcher
     }
 
     ++stats.nodes;
+    checkTime();
     if(beta - alpha == 1) {
       ++stats.zwNodes;
     }
@@ -439,7 +691,7 @@ public class ABSearch implements Searcher
     final boolean whiteToMove = board.turn == 1;
     if (ply > 0 && board.isApproachingDraw())
     {
-      pv[ply][ply].moved = null;
+      pv[ply][ply] = 0;
       return 0;
     }
 
@@ -451,7 +703,7 @@ public class ABSearch implements Searcher
       beta = mateDistance;
       if (alpha >= mateDistance)
       {
-        pv[ply][ply].moved = null;
+        pv[ply][ply] = 0;
         return mateDistance;
       }
     }
@@ -460,18 +712,21 @@ public class ABSearch implements Searcher
        alpha = mateDistance;
        if(mateDistance >= beta)
        {
-         pv[ply][ply].moved = null;
+         pv[ply][ply] = 0;
          return mateDistance;
        }
     }
 
     // Hash Probe
     boolean mateThreat = false;
-    PositionHashtable.HashEntry hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1);
+    final int excludedMove = excludedMoves[ply];
+    PositionHashtable.HashEntry hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1,
+                                                                 excludedMove == 0 ? hashEntries[ply] : excludedEntries[ply]);
 
     if(hashEntry != null)
     {
-      if(hashEntry.depth >= depth / PLY_SIZE)
+      // the entry is for all the moves, so it can't cut off a search that leaves one out
+      if(excludedMove == 0 && hashEntry.depth >= depth / PLY_SIZE)
       {
         switch (hashEntry.type)
         {
@@ -495,8 +750,8 @@ public class ABSearch implements Searcher
           }
           case PositionHashtable.EXACT_VALUE:
           {
-            pv[ply][ply].reset(hashEntry.move);
-            pv[ply][ply+1].moved = null;
+            pv[ply][ply] = hashEntry.move;
+            pv[ply][ply+1] = 0;
             ++stats.hardHashHits;
             return hashEntry.score;
           }
@@ -526,66 +781,162 @@ public class ABSearch implements Searcher
       return score;
     }
 
+    // static score for the pruning below, only computed when one of them can use it
+    int staticScore = -INFINITY;
+    final boolean canPrune = beta - alpha == 1 && excludedMove == 0 && !inCheck[ply] &&
+                             board.pieceValues > 0 && Math.abs(beta) < MATE - 300;
+
+    // Reverse Futility
+    if (canPrune && depth < REVERSE_FUTILITY_MARGIN.length * PLY_SIZE)
+    {
+      ++stats.evals;
+      staticScore = eval.scorePosition(board, alpha, beta);
+      if (staticScore - REVERSE_FUTILITY_MARGIN[depth / PLY_SIZE] >= beta)
+      {
+        ++stats.reverseFutility;
+        pv[ply][ply] = 0;
+        return staticScore - REVERSE_FUTILITY_MARGIN[depth / PLY_SIZE];
+      }
+    }
+
     // Null Move
-    if (doNull && (hashEntry == null || hashEntry.move.moved == null) && !inCheck[ply] && !mateThreat && board.pieceValues > 0 && depth > PLY_SIZE)
+    if (doNull && excludedMove == 0 && (hashEntry == null || hashEntry.move == 0) && !inCheck[ply] && !mateThreat && board.pieceValues > 0 && depth > PLY_SIZE)
     {
       int nullMoveReduction = depth > (6 * PLY_SIZE) && board.pieceValues > 8 ?
                                (3 * PLY_SIZE) :
                                (2 * PLY_SIZE);
-      ++board.moveIndex;
-      board.turn ^= 1;
-      board.repetitionTable[board.moveIndex] = 1;
+      board.makeNullMove();
       ++ply;
       inCheck[ply] = false;
       score = -abSearch(-beta, 1-beta, (depth - nullMoveReduction) - PLY_SIZE, board, false);
       //score = -zwSearch(1-beta, (depth - nullMoveReduction) - 1, board, false, true);
       ply--;
-      board.turn ^= 1;
-      board.repetitionTable[board.moveIndex] = whiteToMove ? board.hash1 : ~board.hash1;
-      board.moveIndex--;
+      board.unmakeNullMove();
 
       if (score < -MATE + 300)
       {
         mateThreat = true;
-        killer1[ply+1].reset(pv[ply + 1][ply + 1]);
+        killer1[ply+1] = pv[ply + 1][ply + 1];
         //depth++;
       }
       else {
-        if(killer2[ply+1].moved == null) {
-          killer2[ply+1].reset(pv[ply + 1][ply + 1]);
+        if(killer2[ply+1] == 0) {
+          killer2[ply+1] = pv[ply + 1][ply + 1];
         }
         else {
-          killer3[ply+1].reset(pv[ply + 1][ply + 1]);
+          killer3[ply+1] = pv[ply + 1][ply + 1];
         }
       }
       if (score >= beta)
       {
-        abHashtable.putEntry(depth / PLY_SIZE, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, NULL_MOVE, mateThreat);
-        pv[ply][ply].moved = null;
+        abHashtable.putEntry(depth / PLY_SIZE, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, 0, mateThreat);
+        pv[ply][ply] = 0;
         return score;
       }
     }
 
+    // ProbCut
+    // A capture that wins enough to beat beta by PROBCUT_MARGIN in a reduced search would
+    // very likely beat beta in the full one
+    if (canPrune && depth >= PROBCUT_DEPTH && !mateThreat)
+    {
+      int probBeta = beta + PROBCUT_MARGIN;
+      if (staticScore == -INFINITY)
+      {
+        ++stats.evals;
+        staticScore = eval.scorePosition(board, alpha, beta);
+      }
+      final Move[] moveList = moveLists[ply];
+      int movesGenerated = moveGeneration.generateCapturesAndPromotions(0, moveList, board);
+      saveState(board);
+      for (int moveIndex = 0; moveIndex < movesGenerated && !done; ++moveIndex)
+      {
+        final Move move = moveList[moveIndex];
+        if (staticScore + swap(board, move, board.turn ^ 1) < probBeta)
+        {
+          continue;
+        }
+
+        board.make(move);
+        if (board.isSquareCheckedByColor(!whiteToMove ? board.blackKing.square : board.whiteKing.square, board.turn))
+        {
+          unmake(board, move);
+          continue;
+        }
+
+        currentLine[ply] = move;
+        currentLine[ply + 1] = NULL_MOVE;
+        ++ply;
+        pv[ply][ply] = 0;
+        kingSafety[0][ply] = board.pieceBoards[0][Piece.QUEEN] != 0 ? eval.scoreAttackingPieces(board, board.whiteKing.square, 0) : 0;
+        kingSafety[1][ply] = board.pieceBoards[1][Piece.QUEEN] != 0 ? eval.scoreAttackingPieces(board, board.blackKing.square, 1) : 0;
+        board.updateAttacks();
+        inCheck[ply] = board.isSquareCheckedByColor(board.turn == 1 ? board.whiteKing.square : board.blackKing.square, board.turn ^ 1);
+        score = -abSearch(-probBeta, 1 - probBeta, depth - PROBCUT_REDUCTION, board, true);
+        ply--;
+        unmake(board, move);
+
+        if (score >= probBeta && !done)
+        {
+          ++stats.probCuts;
+          pv[ply][ply] = move.encode();
+          pv[ply][ply + 1] = 0;
+          abHashtable.putEntry((depth - PROBCUT_REDUCTION) / PLY_SIZE + 1, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, pv[ply][ply], mateThreat);
+          return score;
+        }
+      }
+    }
+
     // IID
 /*
     if(hashEntry == null && depth > (2 * PLY_SIZE))
     {
       abSearch(alpha, beta, depth - (2 * PLY_SIZE), board, false);
-      hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1);
+      hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1, hashEntries[ply]);
     }
 */
 
+    // Singular Extension
+    // If every move but the hash move fails low, by a margin under the hash score, at reduced
+    // depth, the hash move is extended.  If one of them reaches beta as well, more than one
+    // move refutes this node, and it is cut off (multi-cut).
+    boolean singular = false;
+    if (excludedMove == 0 && ply > 0 && depth >= SINGULAR_DEPTH && !inCheck[ply] &&
+        hashEntry != null && hashEntry.move != 0 &&
+        (hashEntry.type == PositionHashtable.LOWER_BOUND || hashEntry.type == PositionHashtable.EXACT_VALUE) &&
+        hashEntry.depth >= depth / PLY_SIZE - 3 && Math.abs(hashEntry.score) < MATE - 300)
+    {
+      int singularBeta = hashEntry.score - SINGULAR_MARGIN * (depth / PLY_SIZE);
+      excludedMoves[ply] = hashEntry.move;
+      score = abSearch(singularBeta - 1, singularBeta, (depth - PLY_SIZE) / 2, board, false);
+      excludedMoves[ply] = 0;
+      if (!done)
+      {
+        if (score < singularBeta)
+        {
+          singular = true;
+        }
+        else if (singularBeta >= beta)
+        {
+          ++stats.multiCuts;
+          pv[ply][ply] = 0;
+          return singularBeta;
+        }
+      }
+    }
+
     boolean pvFound = false;
     final Move[] moveList = moveLists[ply];
     int movesGenerated = 0;
-//    moveGeneration.setHashEntry(hashEntry);
-    if (inCheck[ply])
+    // out of check, moves are generated in stages as they are needed
+    final MovePicker movePicker = inCheck[ply] ? null : movePickers[ply];
+    if (movePicker == null)
     {
       movesGenerated = moveGeneration.generateEvasions(movesGenerated, moveList, board);
     }
     else
     {
-      movesGenerated = moveGeneration.generateMoves(moveList, board);
+      movePicker.reset(board, ply, hashEntry != null ? hashEntry.move : 0);
     }
 
 
@@ -593,14 +944,37 @@ public class ABSearch implements Searcher
     //////////////// LOOP THROUGH ALL MOVES ////////////////
     ////////////////////////////////////////////////////////
     int moveCount = 0;
+    int quietCount = 0;
+    int captureCount = 0;
     int reduce = 0;
 
-    for (int moveIndex = 0; moveIndex < movesGenerated; ++moveIndex)
+    saveState(board);
+    for (int moveIndex = 0; ; ++moveIndex)
     {
-      nextMove(board, moveList, moveIndex, hashEntry);
+      final Move move;
+      if (movePicker != null)
+      {
+        if ((move = movePicker.next()) == null)
+        {
+          break;
+        }
+      }
+      else
+      {
+        if (moveIndex == movesGenerated)
+        {
+          break;
+        }
+        nextMove(board, moveList, moveIndex, hashEntry);
+        move = moveList[moveIndex];
+      }
+
+      if (excludedMove != 0 && move.encode() == excludedMove)
+      {
+        continue;
+      }
 
       // make the move
-      final Move move = moveList[moveIndex];
       board.make(move);
 
       // unmake if we are in check
@@ -608,18 +982,18 @@ public class ABSearch implements Searcher
                                        board.blackKing.square :
                                        board.whiteKing.square, board.turn))
       {
-        board.unmake(move);
+        unmake(board, move);
         continue;
       }
 
-      currentLine[ply].reset(move);
-      currentLine[ply + 1].moved = null;
+      currentLine[ply] = move;
+      currentLine[ply + 1] = NULL_MOVE;
 
       // if no check, count this move, and then recurse
       ++moveCount;
 
       ++ply;
-      pv[ply][ply].moved = null;
+      pv[ply][ply] = 0;
 
       if(board.pieceBoards[0][Piece.QUEEN] != 0) {
         kingSafety[0][ply] = eval.scoreAttackingPieces(board, board.whiteKing.square, 0);
@@ -634,6 +1008,8 @@ public class ABSearch implements Searcher
         kingSafety[1][ply] = 0;
       }
 
+      // the pawn push extension reads the attack maps
+      board.updateAttacks();
       int extend = 0;
       inCheck[ply] = board.isSquareCheckedByColor(board.turn == 1 ? board.whiteKing.square : board.blackKing.square, board.turn ^ 1);
       if (searchExtensions < MAX_EXTENSIONS && extensions[move.fromSquare.index64][move.toSquare.index64] == 0)
@@ -672,6 +1048,12 @@ public class ABSearch implements Searcher
           extend += EXTEND_THREAT_EXTENSION;
           ++stats.threatExtensions;
         }
+        // Extend singular hash move
+        else if(singular && move.encode() == hashEntry.move)
+        {
+          extend += EXTEND_SINGULAR;
+          ++stats.singularExtensions;
+        }
       }
 
       reduce = 0;
@@ -680,7 +1062,7 @@ public class ABSearch implements Searcher
         if(depth + reduce <= 0)
         {
           ply--;
-          board.unmake(move);
+          unmake(board, move);
           continue;
         }
       }
@@ -689,17 +1071,25 @@ public class ABSearch implements Searcher
       searchExtensions += extend/PLY_SIZE;
       searchReductions += reduce != 0 ? 1 : 0;
 
+      int searchDepth = (depth - PLY_SIZE) + extend + reduce;
       if(!pvFound)
       {
-        score = -abSearch(-beta, -alpha, (depth - PLY_SIZE) + extend + reduce, board, doNull);
+        score = -abSearch(-beta, -alpha, searchDepth, board, doNull);
       }
       else
       {
-        score = -abSearch(-alpha-1, -alpha, (depth - PLY_SIZE) + extend + reduce, board, doNull);
-        if (score > alpha && score <= beta)
-        {
-          score = -abSearch(-beta, -alpha, (depth - PLY_SIZE) + extend + reduce, board, doNull);
-        }
+        score = -abSearch(-alpha-1, -alpha, searchDepth, board, doNull);
+      }
+      // a late move that fails high is searched again without its reduction
+      if (lateMoveReductions && reduce < 0 && score > alpha && !done)
+      {
+        ++stats.reduceResearches;
+        searchDepth = (depth - PLY_SIZE) + extend;
+        score = -abSearch(-alpha-1, -alpha, searchDepth, board, doNull);
+      }
+      if (pvFound && score > alpha && score <= beta)
+      {
+        score = -abSearch(-beta, -alpha, searchDepth, board, doNull);
       }
 
       //if(debug) System.err.println("S[" + ply + "]: " + score + " Moves: " + Move.toString(currentLine));
@@ -717,43 +1107,63 @@ public class ABSearch implements Searcher
 
 
       ply--;
-      currentLine[ply].check = move.check = inCheck[ply+1];
+      move.check = inCheck[ply+1];
 
       // unmake move
-      board.unmake(move);
+      unmake(board, move);
+
+      if (move.promoteTo == -1)
+      {
+        if (move.taken == null)
+        {
+          quietsTried[ply][quietCount++] = MoveHistory.pack(move);
+        }
+        else
+        {
+          capturesTried[ply][captureCount++] = MoveHistory.packCapture(move);
+        }
+      }
 
       if (score > best && !done)
       {
         best = score;
 
-        pv[ply][ply].reset(move);
+        pv[ply][ply] = move.encode();
 
-        int t = ply + 1;
-        pv[ply][t].reset(pv[ply + 1][t]);
-        while (pv[ply + 1][t++].moved != null)
+        int t = ply;
+        do
         {
-          pv[ply][t].reset(pv[ply + 1][t]);
+          ++t;
+          pv[ply][t] = pv[ply + 1][t];
         }
+        while (pv[ply][t] != 0);
 
         if (score >= beta)
         {
-          abHashtable.putEntry(depth / PLY_SIZE, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, move, mateThreat);
+          if (excludedMove == 0)
+          {
+            abHashtable.putEntry(depth / PLY_SIZE, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, pv[ply][ply], mateThreat);
+          }
 
           if (score > MATE - 300)
           {
-            killer1[ply].reset(move);
+            killer1[ply] = pv[ply][ply];
           }
           else if (move.taken == null && move.promoteTo == -1)
           {
-            if(killer2[ply].moved == null)
+            if(killer2[ply] == 0)
             {
-              killer2[ply].reset(move);
+              killer2[ply] = pv[ply][ply];
             }
-            else if(!killer2[ply].matches(move))
+            else if(killer2[ply] != pv[ply][ply])
             {
-              killer3[ply].reset(move);
+              killer3[ply] = pv[ply][ply];
             }
-            moveHistory[move.moved.type][move.toSquare.index64] ++;
+            updateHistory(board, depth, quietCount);
+          }
+          if (score <= MATE - 300)
+          {
+            updateCaptureHistory(move, depth, captureCount);
           }
           return score;
         }
@@ -763,16 +1173,18 @@ public class ABSearch implements Searcher
           pvFound = true;
         }
       }
-      else
-      {
-        moveHistory[move.moved.type][move.toSquare.index64] --;
-      }
     }
 
     ////////////////////////////////////////////////////////
     //////////////// TEST FOR MATE OR DRAW /////////////////
     ////////////////////////////////////////////////////////
 
+    if (excludedMove != 0)
+    {
+      // the hash move is still there, so no mate or stalemate, and nothing to store
+      return moveCount == 0 ? alpha : best;
+    }
+
     if (!done)
     {
       if (moveCount == 0)
@@ -785,17 +1197,16 @@ public class ABSearch implements Searcher
         {
           best = 0;
         }
-        pv[ply][ply].reset(NULL_MOVE);
+        pv[ply][ply] = 0;
         abHashtable.putEntry(1000000, PositionHashtable.EXACT_VALUE, best, whiteToMove ? board.hash1 : ~board.hash1, pv[ply][ply], mateThreat);
       }
       else
       {
         if(pvFound && best < -MATE + 300) {
-          killer1[ply+1].reset(pv[ply + 1][ply + 1]);
+          killer1[ply+1] = pv[ply + 1][ply + 1];
         }
         abHashtable.putEntry(depth / PLY_SIZE, !pvFound ? PositionHashtable.UPPER_BOUND : PositionHashtable.EXACT_VALUE, best, whiteToMove ? board.hash1 : ~board.hash1, pv[ply][ply], mateThreat);
       }
-      pv[ply][ply].score = best;
     }
 
     return best;
@@ -816,7 +1227,7 @@ public class ABSearch implements Searcher
        move.castledRook == null &&
 //       move.taken == null &&
 //       alpha > mateDistance &&
-       moveCount > depth / PLY_SIZE/* &&
+       moveCount > (lateMoveReductions ? LATE_MOVES : depth / PLY_SIZE)/* &&
        move.score <= 0*/
             ) {
 
@@ -870,10 +1281,18 @@ public class ABSearch implements Searcher
           ++stats.reduceFutile;
           return REDUCE_FUTILE;
         }
+        if (lateMoveReductions)
+        {
+          return lateMoveReduction(board, depth, moveCount, move, swap, REDUCE_DEFAULT);
+        }
         ++stats.reduceMargin;
         return REDUCE_DEFAULT;
       }
 
+      if (lateMoveReductions)
+      {
+        return lateMoveReduction(board, depth, moveCount, move, swap, REDUCE_BORING);
+      }
       ++stats.reduceBoring;
       return REDUCE_BORING;
     }
@@ -881,6 +1300,41 @@ public class ABSearch implements Searcher
     return 0;
   }
 
+  /**
+   * @param shallowReduction the fixed reduction the move gets where the table's is capped to nothing
+   */
+  private int lateMoveReduction(Board board, int depth, int moveCount, Move move, int swap, int shallowReduction)
+  {
+    // captures that don't lose material aren't late
+    if (move.taken != null && swap >= 0)
+    {
+      return 0;
+    }
+    int reduction = LATE_MOVE_REDUCTIONS[Math.min(depth / PLY_SIZE, 63)][Math.min(moveCount, 63)];
+    if (move.taken == null)
+    {
+      // made already, so the mover is the side not to move, a ply up
+      int score = quietHistory(board.turn ^ 1, move, ply - 1);
+      if (score > 0)
+      {
+        reduction -= PLY_SIZE / 4;
+      }
+      else if (score < 0)
+      {
+        reduction += PLY_SIZE / 4;
+      }
+    }
+    // keep the reduced search out of the quiescence search: it gets depth - PLY_SIZE - reduction
+    reduction = Math.min(reduction, depth - 2 * PLY_SIZE);
+    if (reduction <= 0)
+    {
+      // near the leaves, where most nodes are, the small fixed reductions still pay
+      return shallowReduction;
+    }
+    ++stats.reduceLate;
+    return -reduction;
+  }
+
   ////////////////////////////////////////////////////////
   ////////////////////////////////////////////////////////
   ////////////////////////////////////////////////////////
@@ -894,13 +1348,14 @@ public class ABSearch implements Searcher
 
   public final int quiescenceSearch(int checkDepth, int alpha, int beta, Board board)
   {
-    pv[ply][ply].moved = null;
+    pv[ply][ply] = 0;
     if (done)
     {
       return -INFINITY;
     }
     ++stats.nodes;
     ++stats.qNodes;
+    checkTime();
 
     int score;
     int best = -INFINITY;
@@ -908,7 +1363,7 @@ public class ABSearch implements Searcher
     boolean whiteToMove = board.turn == 1;
     if (ply > 0 && board.isApproachingDraw())
     {
-      pv[ply][ply].moved = null;
+      pv[ply][ply] = 0;
       return 0;
     }
 
@@ -919,7 +1374,7 @@ public class ABSearch implements Searcher
       beta = mateDistance;
       if (alpha >= mateDistance)
       {
-        pv[ply][ply].moved = null;
+        pv[ply][ply] = 0;
         return mateDistance;
       }
     }
@@ -929,12 +1384,12 @@ public class ABSearch implements Searcher
        alpha = mateDistance;
        if(mateDistance >= beta)
        {
-         pv[ply][ply].moved = null;
+         pv[ply][ply] = 0;
          return mateDistance;
        }
     }
 
-    PositionHashtable.HashEntry hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1);
+    PositionHashtable.HashEntry hashEntry = abHashtable.getEntry(whiteToMove ? board.hash1 : ~board.hash1, hashEntries[ply]);
     if (hashEntry != null)
     {
       ++stats.qHashHits;
@@ -944,8 +1399,8 @@ public class ABSearch implements Searcher
         {
           if (hashEntry.score >= beta)
           {
-            pv[ply][ply].reset(hashEntry.move);
-            pv[ply][ply+1].moved = null;
+            pv[ply][ply] = hashEntry.move;
+            pv[ply][ply+1] = 0;
             return hashEntry.score;
           }
           break;
@@ -954,16 +1409,16 @@ public class ABSearch implements Searcher
         {
           if (hashEntry.score < alpha)
           {
-            pv[ply][ply].reset(hashEntry.move);
-            pv[ply][ply+1].moved = null;
+            pv[ply][ply] = hashEntry.move;
+            pv[ply][ply+1] = 0;
             return hashEntry.score;
           }
           break;
         }
         case PositionHashtable.EXACT_VALUE:
         {
-          pv[ply][ply].reset(hashEntry.move);
-          pv[ply][ply+1].moved = null;
+          pv[ply][ply] = hashEntry.move;
+          pv[ply][ply+1] = 0;
           return hashEntry.score;
         }
       }
@@ -992,7 +1447,7 @@ public class ABSearch implements Searcher
         if (score >= beta)
         {
         //if(debug) System.err.println("QSearch Initial Cut(" + (whiteToMove ? score : -score)+ "): " + Move.toString(currentLine));
-          abHashtable.putEntry(-100, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, NULL_MOVE, false);
+          abHashtable.putEntry(-100, PositionHashtable.LOWER_BOUND, score, whiteToMove ? board.hash1 : ~board.hash1, 0, false);
           return score;
         }
         alpha = score;
@@ -1042,6 +1497,7 @@ public class ABSearch implements Searcher
       kingSafety[1][ply] = 0;
     }
     Move move;
+    saveState(board);
     for (int moveIndex = 0; moveIndex < movesGenerated; ++moveIndex)
     {
       nextMove(board, moveList, moveIndex, hashEntry);
@@ -1070,14 +1526,14 @@ public class ABSearch implements Searcher
                                        board.blackKing.square :
                                        board.whiteKing.square, board.turn))
       {
-        board.unmake(move);
+        unmake(board, move);
         continue;
       }
 
       ++moveCount;
 
-      currentLine[ply].reset(move);
-      currentLine[ply + 1].moved = null;
+      currentLine[ply] = move;
+      currentLine[ply + 1] = NULL_MOVE;
       ++ply;
 
       inCheck[ply] = board.isSquareCheckedByColor(board.turn == 1 ? board.whiteKing.square : board.blackKing.square, board.turn ^ 1);
@@ -1086,18 +1542,19 @@ public class ABSearch implements Searcher
       ply--;
 
       // unmake move
-      board.unmake(move);
-      currentLine[ply].check = move.check = inCheck[ply+1];
+      unmake(board, move);
+      move.check = inCheck[ply+1];
 
       if (score > best)
       {
-        pv[ply][ply].reset(move);
-        int t = ply + 1;
-        pv[ply][t].reset(pv[ply + 1][t]);
-        while (pv[ply + 1][t++].moved != null)
+        pv[ply][ply] = move.encode();
+        int t = ply;
+        do
         {
-          pv[ply][t].reset(pv[ply + 1][t]);
+          ++t;
+          pv[ply][t] = pv[ply + 1][t];
         }
+        while (pv[ply][t] != 0);
 
         best = score;
         if (score >= beta)
@@ -1140,8 +1597,9 @@ public class ABSearch implements Searcher
   int attackedPiece = 0;
   int attackerSquare;
 
-  private int swap(Board board, Move move, int color)
+  final int swap(Board board, Move move, int color)
   {
+    board.updateAttacks();
     swapIndex = 1;
     attackers = move.fromSquare.mask_off & (board.squareAttackers[move.toSquare.index64] | (board.squareAttackers[move.fromSquare.index64] & board.squareRammers[move.toSquare.index64]));
     rammers = board.squareRammers[move.toSquare.index64] & ~(board.squareAttackers[move.fromSquare.index64] &  board.squareRammers[move.toSquare.index64]);
@@ -1216,90 +1674,203 @@ public class ABSearch implements Searcher
     return (swapScores[0]);
   }
 
-  public final void nextMove(Board board, Move[] moves, int moveIndex, PositionHashtable.HashEntry hashEntry)
+  /**
+   * Orders a move that neither captures nor promotes: escaping an undefended attacked piece
+   * first, then by history.
+   */
+  final void scoreQuietMove(Board board, Move move)
   {
-    int bestIndex = -1;
-    int best = -Searcher.INFINITY;
+    board.updateAttacks();
+    if((board.attacks[board.turn ^ 1] & ~board.attacks[board.turn] & move.fromSquare.mask_on) != 0 &&
+       (board.attacks[board.turn ^ 1] & ~board.attacks[board.turn] & move.toSquare.mask_on) == 0) {
+      move.score += 1000;
+    }
+    else {
+      move.score = quietHistory(board.turn, move, ply);
+      if (ply > 0 && move.encode() == history.getCounterMove(board.turn, MoveHistory.key(currentLine[ply - 1]))) {
+        move.score += COUNTER_MOVE_SCORE;
+      }
+    }
+  }
+
+  /**
+   * @return the history of a quiet move played at a ply, by the move before it and the one before that
+   */
+  private int quietHistory(int side, Move move, int ply)
+  {
+    return history.score(side, MoveHistory.pack(move),
+                         ply > 0 ? MoveHistory.key(currentLine[ply - 1]) : MoveHistory.NONE,
+                         ply > 1 ? MoveHistory.key(currentLine[ply - 2]) : MoveHistory.NONE);
+  }
+
+  /**
+   * A quiet move cut off at this ply, the last one tried.  It gets a bonus and is the new
+   * counter move, and the quiet moves tried before it get a penalty.
+   */
+  private void updateHistory(Board board, int depth, int quietCount)
+  {
+    int previous = ply > 0 ? MoveHistory.key(currentLine[ply - 1]) : MoveHistory.NONE;
+    int previous2 = ply > 1 ? MoveHistory.key(currentLine[ply - 2]) : MoveHistory.NONE;
+    int bonus = historyBonus(depth);
+    int[] tried = quietsTried[ply];
+    history.update(board.turn, tried[quietCount - 1], previous, previous2, bonus);
+    for (int i = 0; i < quietCount - 1; i++)
+    {
+      history.update(board.turn, tried[i], previous, previous2, -bonus);
+    }
+    history.setCounterMove(board.turn, previous, pv[ply][ply]);
+  }
+
+  /**
+   * A move cut off at this ply.  If it is a capture, the last one tried, it gets a bonus,
+   * and either way the captures tried before it get a penalty.
+   */
+  private void updateCaptureHistory(Move move, int depth, int captureCount)
+  {
+    int bonus = historyBonus(depth);
+    int[] tried = capturesTried[ply];
+    int penalized = captureCount;
+    if (move.taken != null && move.promoteTo == -1)
+    {
+      history.updateCapture(tried[--penalized], bonus);
+    }
+    for (int i = 0; i < penalized; i++)
+    {
+      history.updateCapture(tried[i], -bonus);
+    }
+  }
+
+  /**
+   * Orders a capture by the value taken, then the value of the capturer, then capture history.
+   * Promotions keep the score they were generated with.
+   */
+  final void scoreCapture(Move move)
+  {
+    if (move.taken != null && move.promoteTo == -1)
+    {
+      move.score = Move.CAPTURE_SCORE + 10 * Piece.TYPE_VALUES[move.taken.type] - Piece.TYPE_VALUES[move.moved.type] / 10 +
+                   history.captureScore(MoveHistory.packCapture(move)) / CAPTURE_HISTORY_SCALE;
+    }
+  }
+
+  /**
+   * @return true for a capture or promotion whose SEE has to be looked at, one that takes
+   *         less than it puts at risk
+   */
+  final boolean mightLose(Move move)
+  {
+    return move.taken != null ?
+           Piece.TYPE_VALUES[move.taken.type] - Piece.TYPE_VALUES[move.moved.type] < 50 :
+           move.promoteTo != -1;
+  }
+
+  private static int historyBonus(int depth)
+  {
+    int plies = depth / PLY_SIZE;
+    return Math.min(16 * plies * plies + 32, 1200);
+  }
 
-    for(int index = moveIndex;moves[index].moved != null;++index)
+  /**
+   * Moves the best of the moves from moveIndex on to moveIndex, scoring them all when
+   * moveIndex is 0.  A capture or promotion that might lose gets its SEE only when it comes
+   * up as the best, and goes back if it loses.
+   */
+  public final void nextMove(Board board, Move[] moves, int moveIndex, PositionHashtable.HashEntry hashEntry)
+  {
+    final boolean[] checked = swapChecked[ply];
+    if(moveIndex == 0)
     {
-      if(moveIndex == 0) {
-        if (hashEntry != null && moves[index].matches(hashEntry.move))
+      for(int index = 0;moves[index].moved != null;++index)
+      {
+        checked[index] = true;
+        final int code = moves[index].encode();
+        if (hashEntry != null && code == hashEntry.move)
         {
           moves[index].score = INFINITY;
         }
-        else if(moves[index].matches(killer1[ply]))
+        else if(code == killer1[ply])
         {
           moves[index].score = INFINITY - 1;
         }
-        else if(ply > 1 && moves[index].matches(killer1[ply - 2]))
+        else if(ply > 1 && code == killer1[ply - 2])
         {
           moves[index].score = INFINITY - 2;
         }
-        else if(moves[index].matches(killer2[ply]))
+        else if(code == killer2[ply])
         {
           moves[index].score = INFINITY - 60000;
         }
-        else if(ply > 1 && moves[index].matches(killer2[ply - 2]))
+        else if(ply > 1 && code == killer2[ply - 2])
         {
           moves[index].score = INFINITY - 60001;
         }
-        else if(moves[index].matches(killer3[ply]))
+        else if(code == killer3[ply])
         {
           moves[index].score = INFINITY - 60002;
         }
-        else if(ply > 1 && moves[index].matches(killer3[ply - 2]))
+        else if(ply > 1 && code == killer3[ply - 2])
         {
           moves[index].score = INFINITY - 60003;
         }
-        else if(moves[index].taken != null)
+        else if(moves[index].taken != null || moves[index].promoteTo != -1)
         {
-          if(moves[index].score - Move.CAPTURE_SCORE < 50)
-          {
-            int swapScore = swap(board, moves[index], board.turn ^ 1);
-            if(swapScore <= -50) {
-              moves[index].score = swapScore;
-            }
-            else
-            {
-              moves[index].score = swapScore + Move.CAPTURE_SCORE;
-            }
-          }
-        }
-        else if(moves[index].promoteTo != -1)
-        {
-          if(swap(board, moves[index], board.turn ^ 1) <= -50)
-          {
-            moves[index].score -= Move.PROMOTE_SCORE;
-          }
+          scoreCapture(moves[index]);
+          checked[index] = !mightLose(moves[index]);
         }
         else
         {
-          if((board.attacks[board.turn ^ 1] & ~board.attacks[board.turn] & moves[index].fromSquare.mask_on) != 0 &&
-             (board.attacks[board.turn ^ 1] & ~board.attacks[board.turn] & moves[index].toSquare.mask_on) == 0) {
-            moves[index].score += 1000;
-          }
-          else {
-            moves[index].score = Math.min(moveHistory[moves[index].moved.type][moves[index].toSquare.index64], 8000);
-          }
+          scoreQuietMove(board, moves[index]);
         }
       }
+    }
 
-      if(moves[index].score > best)
+    while(true)
+    {
+      int bestIndex = -1;
+      int best = -Searcher.INFINITY;
+      for(int index = moveIndex;moves[index].moved != null;++index)
       {
-
-        bestIndex = index;
-        best = moves[index].score;
+        if(moves[index].score > best)
+        {
+          bestIndex = index;
+          best = moves[index].score;
+        }
       }
-    }
-    if(bestIndex > -1)
-    {
+      if(bestIndex == -1)
+      {
+        return;
+      }
+
       Move temp = moves[bestIndex];
       moves[bestIndex] = moves[moveIndex];
       moves[moveIndex] = temp;
+      boolean wasChecked = checked[bestIndex];
+      checked[bestIndex] = checked[moveIndex];
+      checked[moveIndex] = wasChecked;
+      if(wasChecked)
+      {
+        return;
+      }
+
+      checked[moveIndex] = true;
+      int swapScore = swap(board, temp, board.turn ^ 1);
+      if(swapScore > -50)
+      {
+        return;
+      }
+      // it loses, look again
+      if(temp.taken != null)
+      {
+        temp.score = swapScore;
+      }
+      else
+      {
+        temp.score -= Move.PROMOTE_SCORE;
+      }
     }
   }
 
+
   public void stop()
   {
     System.err.println("ABSearch stopping!");
@@ -1359,7 +1930,7 @@ public class ABSearch implements Searcher
 
   @Override
   public boolean isResearchAtRoot() {
-    return researchAtRoot;
+    return researchAtRoot || researchWindow;
   }
 
   public PositionHashtable getAbHashtable() {
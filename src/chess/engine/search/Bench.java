@@ -0,0 +1,173 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Board;
+import chess.engine.utils.MoveGeneration;
+
+/**
+ * Searches a fixed set of positions to a fixed depth and reports the total nodes, the speed,
+ * and a signature of the node counts.  With one thread the search is deterministic, so a
+ * changed signature means a change altered the search, not just its speed.
+ *
+ * <pre>
+ * java chess.engine.search.Bench [depth] [threads] [hash MB] [lazy] [copymake] [lmr]
+ * </pre>
+ *
+ * With "lazy" the boards build their attack maps on demand, see Board.lazyAttacks, and with
+ * "copymake" the search takes moves back by restoring a saved BoardState.  "lmr" reduces late
+ * moves by ABSearch's table instead of the fixed reductions, for comparing the two.
+ *
+ * Every position gets a fresh search, evaluator, and table, so results don't depend on order.
+ * The search's own progress still goes to stderr.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public class Bench
+{
+  public static final int DEFAULT_DEPTH = 6;
+
+  public static final String[] POSITIONS = {
+          // openings
+          "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+          "rnbqkb1r/ppp2ppp/4pn2/3p4/3P4/2N1PN2/PPP2PPP/R1BQKB1R b KQkq - 0 1",
+          "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QKB1R w KQ - 0 1",
+
+          // MATS
+          "2r1k2r/pp2bp1p/1q3pp1/3P1b2/4N3/2Qp1N2/PP3PPP/R3R1K1 w k - 0 1",
+          "r1b2rk1/2p1nppp/pp1q1n2/3p4/3P4/P1NBP3/1PQ1NPPP/R3K2R w KQ - 0 1",
+          "2r1r1k1/1p1q1ppp/3p1b2/p2P4/3Q4/5N2/PP2RPPP/4R1K1 w - - 0 1",
+          "2rr2k1/1b3ppp/pb2p3/1p2P3/1P2BPnq/P1N3P1/1B2Q2P/R4R1K b - - 0 1",
+          "8/pR4pk/1b6/2p5/N1p5/8/PP1r2PP/6K1 b - - 0 1",
+          "2r3k1/p2q1rpp/1p3pn1/3P4/4P2P/PQ4B1/6P1/2R2RK1 w - - 0 1",
+          "3k4/8/3n2pp/pp1Pp3/P3P2P/3K2P1/8/3B4 b - - 0 1",
+          "r1b2rk1/5ppp/p3p3/1pnpP3/5P2/2N3P1/PPP3BP/R4RK1 w - - 0 1",
+          "2r2k2/1p3p1p/p1N3p1/3p4/8/1P2PP2/P5PP/2R2K2 w - - 0 1",
+          "4rnk1/pp1q1ppp/2p4r/3p4/3P4/4P1NP/PPQ2PP1/R3R1K1 w - - 0 1",
+          "r2q1rk1/pp2bppp/4pn2/3nN1B1/3P4/1B5Q/PP3PPP/3R1RK1 w - - 0 1",
+          "2b1k2r/1p2q1pp/p1p5/P7/3r1P2/1Q1N4/1P1bP1BP/R4RK1 b k - 0 1",
+          "r1q2r1k/p2n2pp/1p1p1b2/2pP1p2/2P1pP2/1QB1N1P1/PP2P2P/R4R1K w - - 0 1",
+          "4r3/p1p2bk1/3p2p1/2p4p/4PR2/1P1B4/P1P3PP/6K1 b - - 0 1",
+          "r2q1rk1/1p4pp/4p1n1/pNbpPp2/P1P5/3Q4/1P3PPP/R1B1R1K1 b - - 0 1",
+          "b7/3knp2/p2p2pb/1p1Pp2p/1B2P1PP/1P1B1P2/P7/5NK1 b - - 0 1",
+          "2n5/1b2k3/p2pB1p1/BpbPp1P1/4P3/1P4K1/P1N5/8 b - - 0 1",
+          "4r1k1/pppb1pp1/1n6/3P4/2PN4/3B4/P1P4P/K5R1 b - - 0 1",
+          "4r1k1/1p3p1p/4b1p1/3p4/3P1P2/6P1/4B2P/2R3K1 b - - 0 1",
+          "2r1k2r/5ppp/p1pRp3/8/8/4P3/PPP3PP/2KR4 b k - 0 1",
+          "r3kb1r/2p3pp/p1n1p3/1pn1P3/8/1BPq4/P2N1PPP/R1BQ1RK1 w kq - 0 1",
+          "2kr3r/pp1n4/2pb2q1/3pp2p/2P5/1B1P1R2/PP1NQ1PP/5RK1 b - - 0 1",
+          "r1bq1rk1/ppp2pbp/6p1/8/4p3/BP2P3/P1P1BPPP/R2QK2R w KQ - 0 1",
+          "r3k2r/1ppnqppp/p1pb4/4p3/4P3/P2P1P1P/1PPBNP2/R2QK2R b KQkq - 0 1",
+
+          // tactics
+          "r3bb2/P1q3k1/Q2p3p/2pPp1pP/2B1P3/2B5/6P1/R5K1 w - - 0 1",
+          "r1b5/p2k1r1p/3P2pP/1ppR4/2P2p2/2P5/P1B4P/4R1K1 w - - 0 1",
+          "1k2b3/4bpp1/p2pp1P1/1p3P2/2q1P3/4B3/PPPQN2r/1K1R4 w - - 0 1",
+          "2kr3r/ppp1qpp1/2p5/2b2b2/2P1pPP1/1P2P1p1/PBQPB3/RN2K1R1 b Q - 0 1",
+          "5r2/pp1RRrk1/4Qq1p/1PP3p1/8/4B3/1b3P1P/6K1 w - - 0 1",
+          "6k1/1q2rpp1/p6p/P7/1PB1n3/5Q2/6PP/5R1K w - - 0 1",
+          "3r2k1/p6p/b2r2p1/2qPQp2/2P2P2/8/6BP/R4R1K w - - 0 1",
+          "2r1rbk1/p1Bq1ppp/Ppn1b3/1Npp4/B7/3P2Q1/1PP2PPP/R4RK1 w - - 0 1",
+          "r4rk1/ppq3pp/2p1Pn2/4p1Q1/8/2N5/PP4PP/2KR1R2 w - - 0 1",
+          "6k1/p4pp1/Pp2r3/1QPq3p/8/6P1/2P2P1P/1R4K1 w - - 0 1",
+          "1q1r3k/3P1pp1/ppBR1n1p/4Q2P/P4P2/8/5PK1/8 w - - 0 1",
+          "6k1/5pp1/pb1r3p/8/2q1P3/1p3N1P/1P3PP1/2R1Q1K1 b - - 0 1",
+
+          // passed pawns and endings
+          "8/k7/3p4/p2P1p2/P2P1P2/8/8/K7 w - - 0 1",
+          "8/6k1/4K2R/6PP/8/8/8/7r w - - 0 1",
+          "8/p6k/1p3bpp/3qp3/2p5/P1P2P1P/1P2QBP1/6K1 b - - 0 1",
+          "8/6p1/1p6/p7/2P1K2N/1Pk5/8/8 b - - 0 1",
+          "8/6p1/2p5/3p1k2/1p1P3p/1P2KP2/1PP3P1/8 w - - 0 1",
+          "6r1/1p3k2/pPp4R/K1P1p1p1/1P2Pp1p/5P1P/6P1/8 w - - 0 1",
+          "6k1/2q3p1/1n2Pp1p/pBp2P2/Pp2P3/1P1Q1KP1/8/8 w - - 0 1",
+          "8/6Bp/6p1/2k1p3/4PPP1/1pb4P/8/2K5 b - - 0 1",
+          "8/2k5/2p5/2pb2K1/pp4P1/1P1R4/P7/8 b - - 0 1",
+          "2r5/1r5k/1P3p2/PR2pP1p/4P2p/2p1BP2/1p2n3/4R2K b - - 0 1",
+          "8/1R2P3/6k1/3B4/2P2P2/1p2r3/1Kb4p/8 w - - 0 1",
+          "8/Bpk5/8/P2K4/8/8/8/8 w - - 0 1",
+          "1r6/5k2/p4p1K/5R2/7P/8/6P1/8 w - - 0 1",
+          "8/6k1/p4p2/P3q2p/7P/5Q2/5PK1/8 w - - 0 1",
+          "8/8/6p1/3Pkp2/4P3/2K5/6P1/n7 w - - 0 1",
+  };
+
+  public static void main(String[] args)
+  {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    int hashMegabytes = args.length > 2 ? Integer.parseInt(args[2]) : PositionHashtable.DEFAULT_SIZE_MB;
+    boolean lazyAttacks = false;
+    boolean copyMake = false;
+    boolean lateMoveReductions = false;
+    for (int i = 3; i < args.length; i++)
+    {
+      lazyAttacks |= args[i].equals("lazy");
+      copyMake |= args[i].equals("copymake");
+      lateMoveReductions |= args[i].equals("lmr");
+    }
+
+    new Bench().run(depth, threads, hashMegabytes, lazyAttacks, copyMake, lateMoveReductions);
+  }
+
+  public long run(int depth, int threads, int hashMegabytes)
+  {
+    return run(depth, threads, hashMegabytes, false, false, false);
+  }
+
+  public long run(int depth, int threads, int hashMegabytes, boolean lazyAttacks, boolean copyMake, boolean lateMoveReductions)
+  {
+    MoveGeneration moveGeneration = new MoveGeneration();
+    long totalNodes = 0;
+    long signature = 0;
+    long start = System.currentTimeMillis();
+
+    for (int i = 0; i < POSITIONS.length; i++)
+    {
+      Board board = new Board(lazyAttacks);
+      board.setFENPosition(POSITIONS[i]);
+
+      BoardEvaluator eval = new SimpleEvaluator(moveGeneration);
+      ParallelSearch search = new ParallelSearch(moveGeneration, eval, threads, hashMegabytes);
+      search.setCopyMake(copyMake);
+      search.setLateMoveReductions(lateMoveReductions);
+      IterativeSearch iterativeSearch = new IterativeSearch(search, moveGeneration, eval);
+
+      long positionStart = System.currentTimeMillis();
+      int score = iterativeSearch.search(board, depth);
+      long time = System.currentTimeMillis() - positionStart;
+
+      SearchStats stats = search.getStats();
+      long nodes = (long) stats.nodes + stats.helperNodes;
+      totalNodes += nodes;
+      // order sensitive, so two positions trading node counts still changes it
+      signature = signature * 31 + stats.nodes;
+
+      System.out.println(pad(i + 1, 3) + "  " + pad(nodes, 10) + " nodes " + pad(time, 7) + " ms " +
+                         pad(score, 9) + "  " + POSITIONS[i]);
+    }
+
+    long time = Math.max(1, System.currentTimeMillis() - start);
+    System.out.println("===========================");
+    System.out.println("Depth:     " + depth);
+    System.out.println("Threads:   " + threads);
+    System.out.println("Attacks:   " + (lazyAttacks ? "lazy" : "eager"));
+    System.out.println("Takeback:  " + (copyMake ? "copy-make" : "unmake"));
+    System.out.println("Reduction: " + (lateMoveReductions ? "late move table" : "fixed"));
+    System.out.println("Total:     " + totalNodes + " nodes");
+    System.out.println("Time:      " + time + " ms");
+    System.out.println("NPS:       " + totalNodes * 1000 / time);
+    System.out.println("Signature: " + Long.toHexString(signature) + (threads > 1 ? " (not repeatable with more than one thread)" : ""));
+    return signature;
+  }
+
+  private static String pad(long value, int width)
+  {
+    String string = String.valueOf(value);
+    while (string.length() < width)
+    {
+      string = " " + string;
+    }
+    return string;
+  }
+}
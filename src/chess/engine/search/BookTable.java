@@ -0,0 +1,235 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The position and move counts an OpeningBookBuilder collects, shared by its threads.
+ *
+ * Entries are kept in shards, each an open addressed table of primitive arrays behind its
+ * own lock, so threads adding for different positions rarely wait on each other.  A key's
+ * shard is picked by its top bits, taken in signed order, so the shards hold consecutive
+ * ranges of keys and all of a position's moves are in one shard.  The book is written by
+ * sorting each shard in turn.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+final class BookTable
+{
+  private static final int SHARD_BITS = 8;
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private final Shard[] shards = new Shard[1 << SHARD_BITS];
+
+  BookTable()
+  {
+    for (int i = 0; i < shards.length; i++)
+    {
+      shards[i] = new Shard();
+    }
+  }
+
+  /**
+   * Counts a game that played the move from the position.
+   */
+  void add(long key, int move, int weight)
+  {
+    shards[(int) ((key ^ Long.MIN_VALUE) >>> (64 - SHARD_BITS))].add(key, move, weight);
+  }
+
+  /**
+   * @return the number of position and move entries
+   */
+  int size()
+  {
+    int size = 0;
+    for (Shard shard : shards)
+    {
+      size += shard.size;
+    }
+    return size;
+  }
+
+  /**
+   * Writes the entries in key order.  A position's weights are scaled down together if any is
+   * too big for an entry, and moves played in fewer than minGames games, or that never scored,
+   * are left out.  The table is left sorted and can't be added to after.
+   *
+   * @return the number of entries written
+   */
+  int write(DataOutputStream out, int minGames) throws IOException
+  {
+    int entries = 0;
+    for (Shard shard : shards)
+    {
+      shard.sort();
+      for (int first = 0, last; first < shard.size; first = last)
+      {
+        int maxWeight = 0;
+        for (last = first; last < shard.size && shard.keys[last] == shard.keys[first]; last++)
+        {
+          maxWeight = Math.max(maxWeight, shard.weights[last]);
+        }
+        for (int i = first; i < last; i++)
+        {
+          int weight = maxWeight > OpeningBook.MAX_WEIGHT ? (int) ((long) shard.weights[i] * OpeningBook.MAX_WEIGHT / maxWeight) : shard.weights[i];
+          if (shard.games[i] >= minGames && weight > 0)
+          {
+            OpeningBook.writeEntry(out, shard.keys[i], shard.moves[i], weight);
+            ++entries;
+          }
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * One lock's worth of entries.  A slot is empty while its games count is 0.
+   */
+  private static final class Shard
+  {
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] moves = new int[INITIAL_CAPACITY];
+    private int[] weights = new int[INITIAL_CAPACITY];
+    private int[] games = new int[INITIAL_CAPACITY];
+    private int size;
+
+    synchronized void add(long key, int move, int weight)
+    {
+      int mask = keys.length - 1;
+      int slot = slot(key, move) & mask;
+      while (games[slot] != 0)
+      {
+        if (keys[slot] == key && moves[slot] == move)
+        {
+          weights[slot] += weight;
+          games[slot]++;
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      moves[slot] = move;
+      weights[slot] = weight;
+      games[slot] = 1;
+      // kept under three quarters full
+      if (++size > keys.length - (keys.length >> 2))
+      {
+        grow();
+      }
+    }
+
+    private static int slot(long key, int move)
+    {
+      int hash = (int) (key ^ (key >>> 32)) + move * 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+
+    private void grow()
+    {
+      long[] oldKeys = keys;
+      int[] oldMoves = moves;
+      int[] oldWeights = weights;
+      int[] oldGames = games;
+      keys = new long[oldKeys.length << 1];
+      moves = new int[keys.length];
+      weights = new int[keys.length];
+      games = new int[keys.length];
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++)
+      {
+        if (oldGames[i] != 0)
+        {
+          int slot = slot(oldKeys[i], oldMoves[i]) & mask;
+          while (games[slot] != 0)
+          {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          moves[slot] = oldMoves[i];
+          weights[slot] = oldWeights[i];
+          games[slot] = oldGames[i];
+        }
+      }
+    }
+
+    /**
+     * Packs the entries to the front of the arrays, sorted by key.
+     */
+    synchronized void sort()
+    {
+      int count = 0;
+      for (int i = 0; i < keys.length; i++)
+      {
+        if (games[i] != 0)
+        {
+          swap(count++, i);
+        }
+      }
+      sort(0, count - 1);
+    }
+
+    private void sort(int low, int high)
+    {
+      while (high - low > 16)
+      {
+        long pivot = keys[(low + high) >>> 1];
+        int i = low;
+        int j = high;
+        while (i <= j)
+        {
+          while (keys[i] < pivot)
+          {
+            i++;
+          }
+          while (keys[j] > pivot)
+          {
+            j--;
+          }
+          if (i <= j)
+          {
+            swap(i++, j--);
+          }
+        }
+        // recurse on the smaller side, loop on the larger
+        if (j - low < high - i)
+        {
+          sort(low, j);
+          low = i;
+        }
+        else
+        {
+          sort(i, high);
+          high = j;
+        }
+      }
+      for (int i = low + 1; i <= high; i++)
+      {
+        for (int j = i; j > low && keys[j - 1] > keys[j]; j--)
+        {
+          swap(j - 1, j);
+        }
+      }
+    }
+
+    private void swap(int i, int j)
+    {
+      long key = keys[i];
+      keys[i] = keys[j];
+      keys[j] = key;
+      int move = moves[i];
+      moves[i] = moves[j];
+      moves[j] = move;
+      int weight = weights[i];
+      weights[i] = weights[j];
+      weights[j] = weight;
+      int count = games[i];
+      games[i] = games[j];
+      games[j] = count;
+    }
+  }
+}
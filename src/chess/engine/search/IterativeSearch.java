@@ -16,6 +16,12 @@ public class IterativeSearch implements Searcher
   private MoveGeneration moveGeneration;
   private BoardEvaluator eval;
   private SearchStats stats;
+  private SearchListener listener;
+  private TimeManager timeManager;
+  private OpeningBook openingBook;
+  // the last search's move came from the book, and this is its PV
+  private boolean bookMove;
+  private Move[] bookPV = Move.createMoves(2);
   private volatile boolean done = false;
 
   public int score;
@@ -34,6 +40,53 @@ public class IterativeSearch implements Searcher
   }
 
 
+  public void setListener(SearchListener listener)
+  {
+    this.listener = listener;
+  }
+
+
+  /**
+   * The time manager decides between iterations whether to go on, and the search checks it
+   * as it goes.  Without one the search runs to its depth, or until stopped.
+   */
+  public void setTimeManager(TimeManager timeManager)
+  {
+    this.timeManager = timeManager;
+    search.setTimeManager(timeManager);
+  }
+
+
+  public TimeManager getTimeManager()
+  {
+    return timeManager;
+  }
+
+
+  /**
+   * A position in the book is answered with a book move, without searching.
+   */
+  public void setOpeningBook(OpeningBook openingBook)
+  {
+    this.openingBook = openingBook;
+  }
+
+
+  public OpeningBook getOpeningBook()
+  {
+    return openingBook;
+  }
+
+
+  /**
+   * @return the last search's move came from the opening book
+   */
+  public boolean isBookMove()
+  {
+    return bookMove;
+  }
+
+
   public IterativeSearch(Searcher search, MoveGeneration moveGeneration, BoardEvaluator eval)
   {
     this.search = search;
@@ -45,7 +98,25 @@ public class IterativeSearch implements Searcher
 
   public Move[] getPV()
   {
-    return search.getPV();
+    return bookMove ? bookPV : search.getPV();
+  }
+
+
+  /**
+   * Searches until the time manager stops it, a new one if none was set.
+   *
+   * @param softLimit milliseconds, scaled by how the search goes; no iteration starts past half of it
+   * @param hardLimit milliseconds the search stops at, once its first iteration has completed;
+   *                  that one always runs to the end, so there is a move to play
+   */
+  public int search(Board board, int maxDepth, long softLimit, long hardLimit)
+  {
+    if(timeManager == null)
+    {
+      setTimeManager(new TimeManager());
+    }
+    timeManager.start(softLimit, hardLimit);
+    return search(board, maxDepth);
   }
 
 
@@ -53,9 +124,14 @@ public class IterativeSearch implements Searcher
   {
     done = false;
     running = true;
+    bookMove = false;
 
-
-    // check opening book
+    if(openingBook != null && searchBook(board))
+    {
+      done = true;
+      running = false;
+      return score;
+    }
 
     // check EGTBs
 
@@ -67,6 +143,10 @@ public class IterativeSearch implements Searcher
 
     search.setStats(stats);
     search.reset();
+    if(timeManager != null)
+    {
+      timeManager.newSearch();
+    }
 
     board.stats.originalMaterial = eval.getMaterial(board);
     board.stats.originalMaterialDifference = eval.getMaterialDifference(board);
@@ -76,7 +156,9 @@ public class IterativeSearch implements Searcher
     while(currentDepth < maxDepth && !done)
     {
       int maybeScore = search.search(board, currentDepth);
-      if(maybeScore > -MATE && maybeScore < MATE)
+      // an iteration cut short by the clock leaves the PV from the moves it finished, but not a score
+      boolean timeUp = timeManager != null && timeManager.isTimeUp();
+      if(maybeScore > -MATE && maybeScore < MATE && !timeUp)
       {
         score = maybeScore;
       }
@@ -92,7 +174,17 @@ public class IterativeSearch implements Searcher
       }
 //      System.err.println("LineScore: " + new LineScorer(moveGeneration, eval).scoreLine(board, search.getPV()) + "\n");
 
-      if(done)
+      if(done || timeUp)
+      {
+        break;
+      }
+
+      if(listener != null)
+      {
+        listener.iterationComplete(currentDepth, maybeScore, search.getStats(), search.getPV());
+      }
+
+      if(timeManager != null && !timeManager.iterationComplete(currentDepth, maybeScore, search.getStats(), search.getPV()))
       {
         break;
       }
@@ -106,6 +198,28 @@ public class IterativeSearch implements Searcher
   }
 
 
+  private boolean searchBook(Board board)
+  {
+    Move move = openingBook.getMove(board, moveGeneration);
+    if(move == null)
+    {
+      return false;
+    }
+    bookPV[0].reset(move);
+    bookPV[0].score = 0;
+    bookPV[1].reset();
+    bookMove = true;
+    score = 0;
+    stats = new SearchStats();
+    System.err.println("Book: " + move);
+    if(listener != null)
+    {
+      listener.iterationComplete(0, score, stats, bookPV);
+    }
+    return true;
+  }
+
+
   public void stop()
   {
     done = true;
@@ -0,0 +1,163 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Move;
+
+import java.util.Arrays;
+
+/**
+ * The history tables the moves are ordered by, for quiet moves:
+ *
+ * <pre>
+ *   butterfly      by side to move, from square and to square
+ *   continuation   by the piece and to square of the move one ply up, and of this move, and
+ *                  separately of the move two plies up, the side's own last move
+ *   counter moves  by side to move, the quiet move that last refuted the move one ply up
+ * </pre>
+ *
+ * and a capture table, by the capturing piece, its to square and the type taken, that breaks
+ * ties in MVV-LVA order.
+ *
+ * A move that cuts off gets a bonus, and the moves of its kind tried before it at that node
+ * get the same amount taken off.  Updates are gravity style, each one moving an entry part of
+ * the way toward +/- MAX, so entries that are hit often stop growing and old results fade.
+ *
+ * Moves are packed as piece type, from and to square, see pack(), captures also with the
+ * type taken, see packCapture().  Earlier moves are keyed by color, piece type and to square,
+ * see key(), -1 for a null move or none.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+final class MoveHistory
+{
+  static final int MAX = 8000;
+  static final int NONE = -1;
+
+  // earlier moves, by color, piece type and to square
+  private static final int KEYS = 12 * 64;
+  // this move, by piece type and to square; its color follows from the earlier move's
+  private static final int MOVE_KEYS = 6 * 64;
+
+  // [side][from][to]
+  private final int[][][] butterfly = new int[2][64][64];
+  // [key of the move one ply up][key of this move]
+  private final int[][] continuation1 = new int[KEYS][MOVE_KEYS];
+  // [key of the move two plies up][key of this move]
+  private final int[][] continuation2 = new int[KEYS][MOVE_KEYS];
+  // [side][key of the move one ply up], an encoded move
+  private final int[][] counterMoves = new int[2][KEYS];
+  // [key of the capture][type taken]
+  private final int[][] captures = new int[MOVE_KEYS][6];
+
+  void clear()
+  {
+    for (int side = 0; side < 2; side++)
+    {
+      for (int from = 0; from < 64; from++)
+      {
+        Arrays.fill(butterfly[side][from], 0);
+      }
+      Arrays.fill(counterMoves[side], 0);
+    }
+    for (int key = 0; key < KEYS; key++)
+    {
+      Arrays.fill(continuation1[key], 0);
+      Arrays.fill(continuation2[key], 0);
+    }
+    for (int key = 0; key < MOVE_KEYS; key++)
+    {
+      Arrays.fill(captures[key], 0);
+    }
+  }
+
+  static int pack(Move move)
+  {
+    return (move.moved.type << 12) | (move.fromSquare.index64 << 6) | move.toSquare.index64;
+  }
+
+  static int packCapture(Move move)
+  {
+    return (move.taken.type << 15) | pack(move);
+  }
+
+  static int key(Move move)
+  {
+    return move == null || move.moved == null ? NONE : ((move.moved.color * 6 + move.moved.type) << 6) | move.toSquare.index64;
+  }
+
+  private static int packedKey(int packed)
+  {
+    return (((packed >> 12) & 7) << 6) | (packed & 63);
+  }
+
+  /**
+   * @param packed a move from pack()
+   * @return the move's butterfly entry plus its continuation entries, within +/- 3 * MAX
+   */
+  int score(int side, int packed, int previous, int previous2)
+  {
+    int score = butterfly[side][(packed >> 6) & 63][packed & 63];
+    int key = packedKey(packed);
+    if (previous != NONE)
+    {
+      score += continuation1[previous][key];
+    }
+    if (previous2 != NONE)
+    {
+      score += continuation2[previous2][key];
+    }
+    return score;
+  }
+
+  /**
+   * @param bonus positive for a move that cut off, negative for one that didn't
+   */
+  void update(int side, int packed, int previous, int previous2, int bonus)
+  {
+    int from = (packed >> 6) & 63;
+    int key = packedKey(packed);
+    butterfly[side][from][packed & 63] = gravity(butterfly[side][from][packed & 63], bonus);
+    if (previous != NONE)
+    {
+      continuation1[previous][key] = gravity(continuation1[previous][key], bonus);
+    }
+    if (previous2 != NONE)
+    {
+      continuation2[previous2][key] = gravity(continuation2[previous2][key], bonus);
+    }
+  }
+
+  /**
+   * @param packed a capture from packCapture()
+   */
+  int captureScore(int packed)
+  {
+    return captures[packedKey(packed)][packed >> 15];
+  }
+
+  void updateCapture(int packed, int bonus)
+  {
+    int key = packedKey(packed);
+    captures[key][packed >> 15] = gravity(captures[key][packed >> 15], bonus);
+  }
+
+  int getCounterMove(int side, int previous)
+  {
+    return previous == NONE ? 0 : counterMoves[side][previous];
+  }
+
+  void setCounterMove(int side, int previous, int code)
+  {
+    if (previous != NONE)
+    {
+      counterMoves[side][previous] = code;
+    }
+  }
+
+  private static int gravity(int entry, int bonus)
+  {
+    return entry + bonus - entry * Math.abs(bonus) / MAX;
+  }
+}
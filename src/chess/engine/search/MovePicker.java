@@ -0,0 +1,304 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.model.Piece;
+import chess.engine.utils.MoveGeneration;
+
+/**
+ * Hands out the moves of one ply in stages, generating each stage only when the one
+ * before it is used up:
+ *
+ * <pre>
+ *   hash move        found among the moves of its piece, nothing else is generated
+ *   good captures    captures and promotions, MVV-LVA and capture history first, SEE only when
+ *                    one that might lose comes up
+ *   killers          quiet killers of this ply and two plies up, checked the same way as the hash move
+ *   quiet moves      scored by ABSearch.scoreQuietMove()
+ *   bad captures     captures and promotions that lose material
+ * </pre>
+ *
+ * A cutoff on the hash move or a capture never generates the quiet moves.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+final class MovePicker
+{
+  private static final int HASH_MOVE = 0;
+  private static final int GENERATE_CAPTURES = 1;
+  private static final int GOOD_CAPTURES = 2;
+  private static final int KILLERS = 3;
+  private static final int GENERATE_QUIET_MOVES = 4;
+  private static final int QUIET_MOVES = 5;
+  private static final int BAD_CAPTURES = 6;
+  private static final int DONE = 7;
+
+  // killer1, killer2 and killer3, each for this ply and two plies up
+  private static final int KILLER_SLOTS = 6;
+
+  private final ABSearch search;
+  private final MoveGeneration moveGeneration;
+  private final Move[] moves;
+  // parallel to moves: SEE has been looked at
+  private final boolean[] checked;
+  // the moves of a single piece, for the hash move and killers
+  private final Move[] pieceMoves = Move.createMoves(32);
+  // the hash move and killers already handed out
+  private final int[] tried = new int[KILLER_SLOTS + 1];
+  private int triedCount;
+
+  private Board board;
+  private int ply;
+  private int hashMove;
+  private int stage;
+  private int next;
+  private int killer;
+  // [0, goodEnd) captures not yet found to lose, [goodEnd, noisyEnd) losing ones, then the quiet moves up to end
+  private int goodEnd;
+  private int noisyEnd;
+  private int end;
+
+  MovePicker(ABSearch search, MoveGeneration moveGeneration, Move[] moves)
+  {
+    this.search = search;
+    this.moveGeneration = moveGeneration;
+    this.moves = moves;
+    checked = new boolean[moves.length];
+  }
+
+  void reset(Board board, int ply, int hashMove)
+  {
+    this.board = board;
+    this.ply = ply;
+    this.hashMove = hashMove;
+    stage = HASH_MOVE;
+    triedCount = 0;
+  }
+
+  /**
+   * @return the next pseudo legal move, or null when there are none left
+   */
+  Move next()
+  {
+    while (true)
+    {
+      switch (stage)
+      {
+        case HASH_MOVE:
+        {
+          stage = GENERATE_CAPTURES;
+          Move move = findMove(hashMove);
+          if (move != null)
+          {
+            tried[triedCount++] = hashMove;
+            return move;
+          }
+          break;
+        }
+        case GENERATE_CAPTURES:
+        {
+          end = moveGeneration.generateCapturesAndPromotions(0, moves, board);
+          goodEnd = noisyEnd = end;
+          for (int i = 0; i < end; i++)
+          {
+            checked[i] = false;
+            search.scoreCapture(moves[i]);
+          }
+          next = 0;
+          stage = GOOD_CAPTURES;
+          break;
+        }
+        case GOOD_CAPTURES:
+        {
+          Move move = nextGoodCapture();
+          if (move != null)
+          {
+            return move;
+          }
+          killer = 0;
+          stage = KILLERS;
+          break;
+        }
+        case KILLERS:
+        {
+          while (killer < KILLER_SLOTS)
+          {
+            int code = getKiller(killer++);
+            // captures and promotions were handed out with their stage
+            if (code == 0 || (code & (Move.CAPTURE_FLAG | (7 << 12))) != 0 || wasTried(code))
+            {
+              continue;
+            }
+            Move move = findMove(code);
+            if (move != null)
+            {
+              tried[triedCount++] = code;
+              return move;
+            }
+          }
+          stage = GENERATE_QUIET_MOVES;
+          break;
+        }
+        case GENERATE_QUIET_MOVES:
+        {
+          end = moveGeneration.generateQuietMoves(noisyEnd, moves, board);
+          for (int i = noisyEnd; i < end; i++)
+          {
+            search.scoreQuietMove(board, moves[i]);
+          }
+          next = noisyEnd;
+          stage = QUIET_MOVES;
+          break;
+        }
+        case QUIET_MOVES:
+        {
+          Move move = nextBest(end);
+          if (move != null)
+          {
+            return move;
+          }
+          next = goodEnd;
+          stage = BAD_CAPTURES;
+          break;
+        }
+        case BAD_CAPTURES:
+        {
+          Move move = nextBest(noisyEnd);
+          if (move != null)
+          {
+            return move;
+          }
+          stage = DONE;
+          break;
+        }
+        default:
+        {
+          return null;
+        }
+      }
+    }
+  }
+
+  private Move nextGoodCapture()
+  {
+    while (next < goodEnd)
+    {
+      selectBest(next, goodEnd);
+      Move move = moves[next];
+      if (!checked[next] && search.mightLose(move))
+      {
+        checked[next] = true;
+        int swap = search.swap(board, move, board.turn ^ 1);
+        if (swap <= -50)
+        {
+          // save it for last
+          move.score = swap;
+          exchange(next, --goodEnd);
+          continue;
+        }
+      }
+      ++next;
+      if (move.encode() != hashMove)
+      {
+        return move;
+      }
+    }
+    return null;
+  }
+
+  private Move nextBest(int end)
+  {
+    while (next < end)
+    {
+      selectBest(next, end);
+      Move move = moves[next++];
+      if (!wasTried(move.encode()))
+      {
+        return move;
+      }
+    }
+    return null;
+  }
+
+  private void selectBest(int from, int end)
+  {
+    int bestIndex = from;
+    for (int index = from + 1; index < end; ++index)
+    {
+      if (moves[index].score > moves[bestIndex].score)
+      {
+        bestIndex = index;
+      }
+    }
+    exchange(from, bestIndex);
+  }
+
+  private void exchange(int i, int j)
+  {
+    Move move = moves[i];
+    moves[i] = moves[j];
+    moves[j] = move;
+    boolean wasChecked = checked[i];
+    checked[i] = checked[j];
+    checked[j] = wasChecked;
+  }
+
+  private int getKiller(int slot)
+  {
+    int killerPly = (slot & 1) == 0 ? ply : ply - 2;
+    if (killerPly < 0)
+    {
+      return 0;
+    }
+    switch (slot >> 1)
+    {
+      case 0:
+        return search.killer1[killerPly];
+      case 1:
+        return search.killer2[killerPly];
+      default:
+        return search.killer3[killerPly];
+    }
+  }
+
+  private boolean wasTried(int code)
+  {
+    for (int i = 0; i < triedCount; i++)
+    {
+      if (tried[i] == code)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Looks for an encoded move among the moves of the piece on its from square, which
+   * also checks that a hash move or killer can really be played here.
+   */
+  private Move findMove(int code)
+  {
+    if (code == 0)
+    {
+      return null;
+    }
+    Piece piece = board.boardSquares[Board.SQUARES[code & 63].index128].piece;
+    if (piece == null || piece.color != board.turn)
+    {
+      return null;
+    }
+    int count = moveGeneration.generatePieceMoves(0, pieceMoves, board, piece);
+    for (int i = 0; i < count; i++)
+    {
+      if (pieceMoves[i].encode() == code)
+      {
+        return pieceMoves[i];
+      }
+    }
+    return null;
+  }
+}
@@ -1,21 +1,203 @@
+/* $Id$ */
+
 package chess.engine.search;
 
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.model.Piece;
+import chess.engine.utils.MoveGeneration;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
 /**
- * OpeningBook
+ * A binary opening book, memory mapped and searched in place.
+ *
+ * The file is a run of 16 byte entries, big endian, laid out as Polyglot's are but sorted by
+ * key as a signed long:
+ *
+ * <pre>
+ *   bytes  0-7   key      the position's hash, as the search tables key it: Board.hash1,
+ *                         complemented with black to move
+ *   bytes  8-9   move     bits 0-5 to square, 6-11 from square, 12-14 promotion
+ *                         (Piece.KNIGHT to Piece.QUEEN, 0 for none); castling is the king
+ *                         taking its own rook, e1h1
+ *   bytes 10-11  weight   how often to play the move, relative to the others in the position
+ *   bytes 12-15  learn    unused, 0
+ * </pre>
  *
- * @author jlevine
+ * The moves of a position are found by binary search on the key.  Since the keys come from
+ * the engine's own Zobrist keys, read from hashKeys.dat, a book works with the keys it was
+ * built with, not with Polyglot books.  OpeningBookBuilder compiles PGN into one.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
  */
-public class OpeningBook extends PositionHashtable
+public class OpeningBook
 {
-/*
-  public HashEntry getEntry(Board board)
+  public static final int ENTRY_SIZE = 16;
+  public static final int MAX_WEIGHT = 0xFFFF;
+
+  // the most moves a position's entries are read for
+  private static final int MAX_MOVES = 64;
+
+  private final MappedByteBuffer entries;
+  private final int size;
+  private final Random random;
+
+  private final int[] bookMoves = new int[MAX_MOVES];
+  private final int[] bookWeights = new int[MAX_MOVES];
+  private final Move[] legalMoves = Move.createMoves(256);
+  // the legal move for each book move, null for one that isn't
+  private final Move[] candidates = new Move[MAX_MOVES];
+
+  public OpeningBook(File file) throws IOException
+  {
+    this(file, new Random());
+  }
+
+  /**
+   * @param random picks among a position's moves by weight
+   */
+  public OpeningBook(File file, Random random) throws IOException
+  {
+    RandomAccessFile bookFile = new RandomAccessFile(file, "r");
+    try
+    {
+      size = (int) (bookFile.length() / ENTRY_SIZE);
+      // the mapping stays valid once the file is closed
+      entries = bookFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) size * ENTRY_SIZE);
+    }
+    finally
+    {
+      bookFile.close();
+    }
+    this.random = random;
+  }
+
+  /**
+   * @return the number of entries, moves over all positions
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  public static long key(Board board)
+  {
+    return board.turn == 1 ? board.hash1 : ~board.hash1;
+  }
+
+  /**
+   * Reads the book moves for a position.
+   *
+   * @return how many were read into moves and weights
+   */
+  public synchronized int probe(long key, int[] moves, int[] weights)
+  {
+    // the first entry not below the key
+    int low = 0;
+    int high = size;
+    while (low < high)
+    {
+      int middle = (low + high) >>> 1;
+      if (entries.getLong(middle * ENTRY_SIZE) < key)
+      {
+        low = middle + 1;
+      }
+      else
+      {
+        high = middle;
+      }
+    }
+
+    int count = 0;
+    for (int index = low; index < size && count < moves.length && entries.getLong(index * ENTRY_SIZE) == key; index++)
+    {
+      moves[count] = entries.getShort(index * ENTRY_SIZE + 8) & 0xFFFF;
+      weights[count] = entries.getShort(index * ENTRY_SIZE + 10) & 0xFFFF;
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Picks a book move for the position, at random by weight, from those that are legal.
+   *
+   * @return the move, valid until the next call, or null if the position isn't in the book
+   */
+  public synchronized Move getMove(Board board, MoveGeneration moveGeneration)
+  {
+    int count = probe(key(board), bookMoves, bookWeights);
+    if (count == 0)
+    {
+      return null;
+    }
+
+    // line the book moves up with the legal ones, dropping any that aren't
+    int moveCount = moveGeneration.generateFullMoves(legalMoves, board);
+    int total = 0;
+    for (int i = 0; i < count; i++)
+    {
+      candidates[i] = null;
+      for (int j = 0; j < moveCount && bookWeights[i] > 0; j++)
+      {
+        if (encode(legalMoves[j]) == bookMoves[i] && isLegal(board, legalMoves[j]))
+        {
+          candidates[i] = legalMoves[j];
+          total += bookWeights[i];
+          break;
+        }
+      }
+    }
+    if (total == 0)
+    {
+      return null;
+    }
+
+    int pick = random.nextInt(total);
+    for (int i = 0; i < count; i++)
+    {
+      if (candidates[i] != null)
+      {
+        pick -= bookWeights[i];
+        if (pick < 0)
+        {
+          return candidates[i];
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean isLegal(Board board, Move move)
+  {
+    board.make(move);
+    Piece king = board.turn == 1 ? board.blackKing : board.whiteKing;
+    boolean legal = !board.isSquareCheckedByColor(king.square, board.turn);
+    board.unmake(move);
+    return legal;
+  }
+
+  /**
+   * @return the move as a book entry holds it
+   */
+  public static int encode(Move move)
   {
-    return super.getEntry(board);
+    int to = move.castledRook != null ? move.castleFromSquare.index64 : move.toSquare.index64;
+    return to | (move.fromSquare.index64 << 6) | (move.promoteTo == -1 ? 0 : move.promoteTo << 12);
   }
 
-  public void putEntry(int depth, int type, int score, Board board, Move move, boolean mateThreat)
+  public static void writeEntry(DataOutputStream out, long key, int move, int weight) throws IOException
   {
-    super.putEntry(depth, type, score, board, move, mateThreat);
+    out.writeLong(key);
+    out.writeShort(move);
+    out.writeShort(Math.min(weight, MAX_WEIGHT));
+    out.writeInt(0);
   }
-*/
 }
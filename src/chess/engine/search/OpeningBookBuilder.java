@@ -0,0 +1,537 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.model.Piece;
+import chess.engine.utils.MoveGeneration;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles PGN games, as GameLogger writes them, into an OpeningBook.
+ *
+ * Each game is replayed from its first move, or its FEN tag, for up to a number of plies.  Every
+ * move played is counted for the position it was played from, weighted by how the game went for
+ * the side that played it: 2 for a win, 1 for a draw, 0 for a loss.  Moves seen in fewer than a
+ * minimum number of games, or that only ever lost, are left out.
+ *
+ * The calling thread reads the PGN and hands the games out in batches to a number of worker
+ * threads, each replaying on its own board and counting into one shared BookTable.
+ *
+ * Run with: java chess.engine.search.OpeningBookBuilder [-plies n] [-min n] [-threads n] book.bin games.pgn ...
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public class OpeningBookBuilder
+{
+  public static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+  private static final int DEFAULT_PLIES = 30;
+  private static final int DEFAULT_MIN_GAMES = 2;
+
+  private static final int WIN = 2;
+  private static final int DRAW = 1;
+
+  // games handed to a worker at a time, and batches waiting per worker
+  private static final int BATCH_SIZE = 256;
+  private static final int QUEUED_BATCHES = 4;
+
+  private final int plies;
+  private final int minGames;
+  private final int threads;
+
+  private final BookTable table = new BookTable();
+  private final AtomicInteger games = new AtomicInteger();
+  private final AtomicInteger badGames = new AtomicInteger();
+
+  public OpeningBookBuilder(int plies, int minGames)
+  {
+    this(plies, minGames, Runtime.getRuntime().availableProcessors());
+  }
+
+  public OpeningBookBuilder(int plies, int minGames, int threads)
+  {
+    this.plies = plies;
+    this.minGames = minGames;
+    this.threads = Math.max(1, threads);
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    int plies = DEFAULT_PLIES;
+    int minGames = DEFAULT_MIN_GAMES;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int index = 0;
+    for (; index < args.length && args[index].startsWith("-"); index += 2)
+    {
+      if (args[index].equals("-plies"))
+      {
+        plies = Integer.parseInt(args[index + 1]);
+      }
+      else if (args[index].equals("-min"))
+      {
+        minGames = Integer.parseInt(args[index + 1]);
+      }
+      else if (args[index].equals("-threads"))
+      {
+        threads = Integer.parseInt(args[index + 1]);
+      }
+    }
+    if (args.length - index < 2)
+    {
+      System.err.println("Usage: java " + OpeningBookBuilder.class.getName() + " [-plies n] [-min n] [-threads n] book.bin games.pgn ...");
+      System.exit(1);
+    }
+
+    long start = System.currentTimeMillis();
+    OpeningBookBuilder builder = new OpeningBookBuilder(plies, minGames, threads);
+    for (int i = index + 1; i < args.length; i++)
+    {
+      builder.addGames(new File(args[i]));
+    }
+    long read = System.currentTimeMillis() - start;
+    int entries = builder.write(new File(args[index]));
+    long time = System.currentTimeMillis() - start;
+    System.err.println(builder.games + " games (" + builder.badGames + " with an illegal move), " +
+                       entries + " of " + builder.table.size() + " entries, " + time + " ms, " +
+                       builder.games.get() * 60000L / Math.max(1, read) + " games/minute read");
+  }
+
+  /**
+   * Reads every game in a PGN file, returning once all of them are counted.
+   */
+  public void addGames(File pgn) throws IOException
+  {
+    BlockingQueue<List<Game>> queue = new ArrayBlockingQueue<List<Game>>(threads * QUEUED_BATCHES);
+    Replayer[] replayers = new Replayer[threads];
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++)
+    {
+      replayers[i] = new Replayer(queue);
+      workers[i] = new Thread(replayers[i], "Book builder " + i);
+      workers[i].start();
+    }
+
+    BufferedReader in = new BufferedReader(new FileReader(pgn), 1 << 16);
+    try
+    {
+      List<Game> batch = new ArrayList<Game>(BATCH_SIZE);
+      Game game = new Game();
+      StringBuilder moveText = new StringBuilder();
+      String line;
+      while ((line = in.readLine()) != null)
+      {
+        line = line.trim();
+        if (line.startsWith("["))
+        {
+          // a tag after move text starts the next game
+          if (moveText.length() > 0)
+          {
+            game.moveText = moveText.toString();
+            batch.add(game);
+            if (batch.size() == BATCH_SIZE)
+            {
+              submit(queue, batch, workers);
+              batch = new ArrayList<Game>(BATCH_SIZE);
+            }
+            game = new Game();
+            moveText.setLength(0);
+          }
+          if (line.startsWith("[FEN "))
+          {
+            game.fen = tagValue(line);
+          }
+          else if (line.startsWith("[Result "))
+          {
+            game.result = tagValue(line);
+          }
+        }
+        else if (!line.startsWith("%"))
+        {
+          // a ; comment runs to the end of the line
+          int comment = line.indexOf(';');
+          moveText.append(comment > -1 ? line.substring(0, comment) : line).append(' ');
+        }
+      }
+      if (moveText.length() > 0)
+      {
+        game.moveText = moveText.toString();
+        batch.add(game);
+      }
+      if (!batch.isEmpty())
+      {
+        submit(queue, batch, workers);
+      }
+    }
+    finally
+    {
+      in.close();
+      // an empty batch ends a worker, whichever takes it
+      try
+      {
+        for (int i = 0; i < threads; i++)
+        {
+          submit(queue, new ArrayList<Game>(), workers);
+        }
+        for (Thread worker : workers)
+        {
+          worker.join();
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+    for (Replayer replayer : replayers)
+    {
+      if (replayer.failure != null)
+      {
+        throw new IOException("Unable to replay " + pgn + ": " + replayer.failure);
+      }
+    }
+  }
+
+  /**
+   * Queues a batch, waiting for room unless the workers have all died.
+   */
+  private static void submit(BlockingQueue<List<Game>> queue, List<Game> batch, Thread[] workers) throws IOException
+  {
+    try
+    {
+      while (!queue.offer(batch, 1, TimeUnit.SECONDS))
+      {
+        boolean alive = false;
+        for (Thread worker : workers)
+        {
+          alive |= worker.isAlive();
+        }
+        if (!alive)
+        {
+          throw new IOException("No book builder threads left");
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted");
+    }
+  }
+
+  private static String tagValue(String tag)
+  {
+    int open = tag.indexOf('"');
+    int close = tag.lastIndexOf('"');
+    return open > -1 && close > open ? tag.substring(open + 1, close) : "";
+  }
+
+  /**
+   * Writes the book, its entries sorted by key.
+   *
+   * @return the number of entries written
+   */
+  public int write(File book) throws IOException
+  {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(book), 1 << 16));
+    try
+    {
+      return table.write(out, minGames);
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  private static final class Game
+  {
+    String fen;
+    String result = "*";
+    String moveText;
+  }
+
+  /**
+   * A worker thread, replaying the games of each batch it takes until it takes an empty one.
+   * Standard games are played on one board kept at the start position, their moves taken
+   * back after, which is cheaper than setting a board up for each.
+   */
+  private final class Replayer implements Runnable
+  {
+    private final BlockingQueue<List<Game>> queue;
+    private final MoveGeneration moveGeneration = new MoveGeneration();
+    private final Move[] moves = Move.createMoves(256);
+    // the moves played in the current game, to take back
+    private final Move[] line = Move.createMoves(plies);
+    private final Board startBoard = new Board(true);
+    private volatile Throwable failure;
+
+    Replayer(BlockingQueue<List<Game>> queue)
+    {
+      this.queue = queue;
+      startBoard.setFENPosition(START_POSITION);
+    }
+
+    public void run()
+    {
+      try
+      {
+        List<Game> batch;
+        while (!(batch = queue.take()).isEmpty())
+        {
+          for (Game game : batch)
+          {
+            addGame(game);
+          }
+        }
+      }
+      catch (InterruptedException e)
+      {
+        failure = e;
+      }
+      catch (Throwable t)
+      {
+        failure = t;
+        // keep taking batches, so the reader doesn't wait on this thread
+        try
+        {
+          while (!queue.take().isEmpty())
+          {
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // done
+        }
+      }
+    }
+
+    /**
+     * Replays a game's moves, counting each one up to the ply limit.  Comments, variations,
+     * move numbers and annotations are skipped.  A game with a move that can't be played is
+     * counted up to that move.
+     */
+    private void addGame(Game game)
+    {
+      int whiteScore = game.result.equals("1-0") ? WIN : game.result.equals("1/2-1/2") ? DRAW : 0;
+      int blackScore = game.result.equals("0-1") ? WIN : game.result.equals("1/2-1/2") ? DRAW : 0;
+      games.incrementAndGet();
+
+      Board board = startBoard;
+      if (game.fen != null)
+      {
+        board = new Board(true);
+        try
+        {
+          board.setFENPosition(game.fen);
+        }
+        catch (RuntimeException e)
+        {
+          badGames.incrementAndGet();
+          return;
+        }
+      }
+
+      String moveText = game.moveText;
+      int ply = 0;
+      int depth = 0;
+      int length = moveText.length();
+      try
+      {
+        for (int i = 0; i < length && ply < plies; )
+        {
+          char c = moveText.charAt(i);
+          if (c == '{')
+          {
+            int close = moveText.indexOf('}', i);
+            i = close < 0 ? length : close + 1;
+            continue;
+          }
+          if (c == '(' || c == ')')
+          {
+            depth += c == '(' ? 1 : -1;
+            ++i;
+            continue;
+          }
+          if (Character.isWhitespace(c))
+          {
+            ++i;
+            continue;
+          }
+          int end = i;
+          while (end < length && " \t(){".indexOf(moveText.charAt(end)) < 0)
+          {
+            ++end;
+          }
+          String token = moveText.substring(i, end);
+          i = end;
+          if (depth > 0 || token.startsWith("$"))
+          {
+            continue;
+          }
+          // move numbers, "12." or "12...", may run into the move
+          int dots = token.lastIndexOf('.');
+          if (dots > -1)
+          {
+            token = token.substring(dots + 1);
+          }
+          if (token.length() == 0 || token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*"))
+          {
+            continue;
+          }
+
+          Move move = findMove(board, token);
+          if (move == null)
+          {
+            badGames.incrementAndGet();
+            break;
+          }
+          table.add(OpeningBook.key(board), OpeningBook.encode(move), board.turn == 1 ? whiteScore : blackScore);
+          line[ply].reset(move);
+          board.make(line[ply]);
+          ++ply;
+        }
+      }
+      finally
+      {
+        if (board == startBoard)
+        {
+          while (ply > 0)
+          {
+            board.unmake(line[--ply]);
+          }
+        }
+      }
+    }
+
+    /**
+     * Finds the legal move a SAN token names, e.g. e4, exd5, Nbd7, R1e2, e8=Q, O-O.
+     *
+     * @return the move, valid until the next call, or null if there is none
+     */
+    Move findMove(Board board, String san)
+    {
+      // check and annotation marks
+      int end = san.length();
+      while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) > -1)
+      {
+        --end;
+      }
+      san = san.substring(0, end);
+
+      int moveCount = moveGeneration.generateFullMoves(moves, board);
+      if (san.startsWith("O-O") || san.startsWith("0-0"))
+      {
+        boolean kingside = san.length() == 3;
+        for (int i = 0; i < moveCount; i++)
+        {
+          Move move = moves[i];
+          if (move.castledRook != null && (move.toSquare.file > move.fromSquare.file) == kingside && isLegal(board, move))
+          {
+            return move;
+          }
+        }
+        return null;
+      }
+
+      int promoteTo = -1;
+      int equals = san.indexOf('=');
+      if (equals > -1 && equals + 1 < san.length())
+      {
+        promoteTo = pieceType(san.charAt(equals + 1));
+        san = san.substring(0, equals);
+      }
+      else if (san.length() > 2 && pieceType(san.charAt(san.length() - 1)) > Piece.PAWN && Character.isDigit(san.charAt(san.length() - 2)))
+      {
+        promoteTo = pieceType(san.charAt(san.length() - 1));
+        san = san.substring(0, san.length() - 1);
+      }
+      if (san.length() < 2)
+      {
+        return null;
+      }
+
+      int type = Character.isUpperCase(san.charAt(0)) ? pieceType(san.charAt(0)) : Piece.PAWN;
+      int toFile = san.charAt(san.length() - 2) - 'a';
+      int toRank = san.charAt(san.length() - 1) - '1';
+      int fromFile = -1;
+      int fromRank = -1;
+      for (int i = type == Piece.PAWN ? 0 : 1; i < san.length() - 2; i++)
+      {
+        char c = san.charAt(i);
+        if (c >= 'a' && c <= 'h')
+        {
+          fromFile = c - 'a';
+        }
+        else if (c >= '1' && c <= '8')
+        {
+          fromRank = c - '1';
+        }
+      }
+      if (type < 0 || toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7)
+      {
+        return null;
+      }
+
+      for (int i = 0; i < moveCount; i++)
+      {
+        Move move = moves[i];
+        if (move.moved.type == type && move.castledRook == null &&
+            move.toSquare.index64 == toRank * 8 + toFile &&
+            move.promoteTo == promoteTo &&
+            (fromFile < 0 || move.fromSquare.file == fromFile) &&
+            (fromRank < 0 || move.fromSquare.rank == fromRank) &&
+            isLegal(board, move))
+        {
+          return move;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static int pieceType(char c)
+  {
+    switch (Character.toUpperCase(c))
+    {
+      case 'N':
+        return Piece.KNIGHT;
+      case 'B':
+        return Piece.BISHOP;
+      case 'R':
+        return Piece.ROOK;
+      case 'Q':
+        return Piece.QUEEN;
+      case 'K':
+        return Piece.KING;
+      case 'P':
+        return Piece.PAWN;
+      default:
+        return -1;
+    }
+  }
+
+  private static boolean isLegal(Board board, Move move)
+  {
+    board.make(move);
+    Piece king = board.turn == 1 ? board.blackKing : board.whiteKing;
+    boolean legal = !board.isSquareCheckedByColor(king.square, board.turn);
+    board.unmake(move);
+    return legal;
+  }
+}
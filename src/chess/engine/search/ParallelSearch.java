@@ -0,0 +1,230 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.utils.MoveGeneration;
+
+/**
+ * Lazy SMP search.  The main search runs exactly as a single threaded ABSearch would,
+ * while each helper thread runs its own iterative deepening on a private copy of the
+ * root board.  The only thing the threads share is the transposition table, so the
+ * helpers speed up the main search by filling the table with cutoffs and hash moves.
+ *
+ * The PV, score, and stats reported through the Searcher interface are the main search's.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public class ParallelSearch implements Searcher
+{
+  private static final int MAX_DEPTH = 100;
+
+  private PositionHashtable abHashtable;
+  private ABSearch search;
+  private ABSearch[] helpers;
+  private Thread[] helperThreads;
+  private volatile boolean stopped = true;
+
+  public ParallelSearch(MoveGeneration moveGeneration, BoardEvaluator eval, int threads)
+  {
+    this(moveGeneration, eval, threads, PositionHashtable.DEFAULT_SIZE_MB);
+  }
+
+  public ParallelSearch(MoveGeneration moveGeneration, BoardEvaluator eval, int threads, int hashMegabytes)
+  {
+    // the table belongs to this search, which ages it once for all threads
+    abHashtable = new PositionHashtable(hashMegabytes);
+    search = new ABSearch(moveGeneration, eval, abHashtable);
+
+    // Evaluators keep scratch state and a pawn hash, so every helper gets its own.
+    // Move generation is stateless and is shared.
+    helpers = new ABSearch[Math.max(0, threads - 1)];
+    helperThreads = new Thread[helpers.length];
+    for (int i = 0; i < helpers.length; i++)
+    {
+      helpers[i] = new ABSearch(moveGeneration, new SimpleEvaluator(moveGeneration), abHashtable);
+      helpers[i].setStats(new SearchStats());
+    }
+  }
+
+  /**
+   * @see ABSearch#setCopyMake(boolean)
+   */
+  public void setCopyMake(boolean copyMake)
+  {
+    search.setCopyMake(copyMake);
+    for (ABSearch helper : helpers)
+    {
+      helper.setCopyMake(copyMake);
+    }
+  }
+
+  /**
+   * @see ABSearch#setLateMoveReductions(boolean)
+   */
+  public void setLateMoveReductions(boolean lateMoveReductions)
+  {
+    search.setLateMoveReductions(lateMoveReductions);
+    for (ABSearch helper : helpers)
+    {
+      helper.setLateMoveReductions(lateMoveReductions);
+    }
+  }
+
+  /**
+   * Only the main search checks the clock; stopping it stops the helpers.
+   */
+  public void setTimeManager(TimeManager timeManager)
+  {
+    search.setTimeManager(timeManager);
+  }
+
+  public int getThreads()
+  {
+    return helpers.length + 1;
+  }
+
+  public SearchStats getStats()
+  {
+    SearchStats stats = search.getStats();
+    if (stats != null)
+    {
+      long helperNodes = 0;
+      for (ABSearch helper : helpers)
+      {
+        helperNodes += helper.getStats().nodes;
+      }
+      stats.helperNodes = helperNodes;
+    }
+    return stats;
+  }
+
+
+  public void setStats(SearchStats stats)
+  {
+    search.setStats(stats);
+  }
+
+
+  public Move[] getPV()
+  {
+    return search.getPV();
+  }
+
+
+  public int search(Board board, int depth)
+  {
+    if (stopped)
+    {
+      startHelpers(board);
+    }
+    return search.search(board, depth);
+  }
+
+
+  private void startHelpers(Board board)
+  {
+    stopped = false;
+    for (int i = 0; i < helpers.length; i++)
+    {
+      final ABSearch helper = helpers[i];
+      final Board helperBoard = board.copy();
+
+      // odd helpers run one ply ahead so the threads spread over two depths
+      final int startDepth = 1 + (i & 1);
+
+      helperThreads[i] = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          for (int depth = startDepth; depth < MAX_DEPTH && !stopped; depth++)
+          {
+            helper.search(helperBoard, depth);
+          }
+        }
+      }, "SearchHelper-" + (i + 1));
+      helperThreads[i].setDaemon(true);
+      helperThreads[i].start();
+    }
+  }
+
+
+  public boolean isDone()
+  {
+    if (!search.isDone())
+    {
+      return false;
+    }
+    for (Thread thread : helperThreads)
+    {
+      if (thread != null && thread.isAlive())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  public void stop()
+  {
+    search.stop();
+    stopHelpers();
+  }
+
+
+  private void stopHelpers()
+  {
+    stopped = true;
+    for (int i = 0; i < helperThreads.length; i++)
+    {
+      Thread thread = helperThreads[i];
+      if (thread == null)
+      {
+        continue;
+      }
+      // a helper may be just entering its next iteration, so keep raising the flag until it exits
+      while (thread.isAlive())
+      {
+        helpers[i].done = true;
+        try
+        {
+          thread.join(10);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      helperThreads[i] = null;
+    }
+  }
+
+
+  public void reset()
+  {
+    stopHelpers();
+    abHashtable.age();
+    search.reset();
+    for (ABSearch helper : helpers)
+    {
+      helper.setStats(new SearchStats());
+      helper.reset();
+    }
+  }
+
+
+  public boolean isResearchAtRoot()
+  {
+    return search.isResearchAtRoot();
+  }
+
+
+  public PositionHashtable getAbHashtable()
+  {
+    return abHashtable;
+  }
+}
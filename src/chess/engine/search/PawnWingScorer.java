@@ -77,13 +77,11 @@ public class PawnWingScorer
 
     if(movesGenerated == 0)
     {
-      board.moveIndex++;
-      board.turn ^= 1;
+      board.makeNullMove();
       ply++;
       score = -searchPawnWing(-beta, -alpha, depth - 1);
       ply--;
-      board.moveIndex--;
-      board.turn ^= 1;
+      board.unmakeNullMove();
     }
 
     for(int t = 0;t < movesGenerated;t++)
@@ -2,9 +2,30 @@
 
 package chess.engine.search;
 
-import chess.engine.model.Move;
+import java.util.Arrays;
 
 /**
+ * A transposition table that may be shared, without locking, by any number of search threads.
+ *
+ * Every entry is two longs: the data word, and the position hash XOR'd with the data word.
+ * A reader recomputes the hash from both words, so an entry torn by a concurrent writer
+ * simply fails to verify and is treated as a miss.
+ *
+ * Entries are grouped in buckets of four, 64 bytes, so a probe touches a single cache line.
+ * Each entry is stamped with the generation of the search that wrote it; age() just starts
+ * a new generation in constant time, and entries from older generations are treated as aged
+ * when probed and are the first to be replaced.  Nothing walks the table between moves.
+ *
+ * <pre>
+ * data word:
+ *   bits  0-15  move        (Move.encode())
+ *   bits 16-40  score       (offset by SCORE_OFFSET)
+ *   bits 41-48  depth       (in plies, offset by DEPTH_OFFSET)
+ *   bits 49-50  type        (UPPER_BOUND, LOWER_BOUND, EXACT_VALUE)
+ *   bit  51     mate threat
+ *   bits 52-63  generation
+ * </pre>
+ *
  * @author Joshua Levine <levinester@gmail.com>
  * @version $Revision$ $Name$ $Date$
  */
@@ -14,9 +35,38 @@ public class PositionHashtable
   public static final byte LOWER_BOUND = 1;
   public static final byte EXACT_VALUE = 2;
 
+  // the zobrist keys are checked against this mask, see Board
   public static int HASH_SIZE = (int)1L << 20;
   public static int HASH_MASK = HASH_SIZE - 1;
 
+  public static final int DEFAULT_SIZE_MB = 32;
+  public static final int MAX_SIZE_MB = 8192;
+
+  private static final int BUCKET_SIZE = 4;
+  private static final int BUCKET_SHIFT = 3;
+
+  private static final int SCORE_SHIFT = 16;
+  private static final int DEPTH_SHIFT = 41;
+  private static final int TYPE_SHIFT = 49;
+  private static final int MATE_THREAT_SHIFT = 51;
+  private static final int GENERATION_SHIFT = 52;
+
+  private static final long MOVE_MASK = 0xFFFFL;
+  private static final long SCORE_MASK = (1L << 25) - 1;
+  private static final long DEPTH_MASK = 0xFFL;
+  private static final long TYPE_MASK = 3L;
+  private static final int GENERATION_MASK = 0xFFF;
+
+  private static final int SCORE_OFFSET = 1 << 24;
+  private static final int DEPTH_OFFSET = 128;
+
+  // depth given to aged entries: too shallow to cut, but still good for a hash move
+  private static final int AGED_DEPTH = -101;
+
+  /**
+   * A decoded copy of an entry.  The table never hands out its own storage,
+   * so an entry stays valid while other threads keep writing.
+   */
   public static class HashEntry
   {
 
@@ -24,114 +74,264 @@ public class PositionHashtable
     public long hash = 0;
     public byte type = -1;
     public int score = 0;
-    public Move move = new Move();
+    // Move.encode(), 0 for none
+    public int move;
     public boolean mateThreat;
 
     public void reset()
     {
-      depth = -101;
+      depth = AGED_DEPTH;
       hash = 0;
       type = -1;
       score = 0;
       mateThreat = false;
-      move.moved = null;
+      move = 0;
     }
   }
 
-  // index128 as [hash_index][fallback]
-  private final HashEntry[] DEPTH_FIRST_HASH = new HashEntry[HASH_SIZE];
-  private final HashEntry[] ALWAYS_STORE_HASH = new HashEntry[HASH_SIZE];
+  // [bucket * 8 + entry * 2]     key
+  // [bucket * 8 + entry * 2 + 1] data
+  private long[] table;
+  private int bucketMask;
+  private int sizeMB;
+  private volatile int generation;
+  // the next age() leaves the generation alone, see keepGeneration()
+  private volatile boolean keepGeneration;
 
   public PositionHashtable()
   {
-    for(int t = 0;t < HASH_SIZE;t++)
-    {
-      DEPTH_FIRST_HASH[t] = new HashEntry();
-      ALWAYS_STORE_HASH[t] = new HashEntry();
-    }
+    this(DEFAULT_SIZE_MB);
+  }
 
-    clear();
+  public PositionHashtable(int megabytes)
+  {
+    resize(megabytes);
   }
 
-  public final HashEntry getEntry(long boardHash)
+  /**
+   * Reallocates the table to the largest power of two buckets that fits in the given
+   * number of megabytes.  This drops every entry, so only call it between searches.
+   */
+  public void resize(int megabytes)
   {
-    int index = (int)(boardHash & HASH_MASK);
+    megabytes = Math.max(1, Math.min(MAX_SIZE_MB, megabytes));
+    long buckets = Long.highestOneBit(((long)megabytes << 20) / (BUCKET_SIZE * 16));
 
-    PositionHashtable.HashEntry depthFirstEntry = DEPTH_FIRST_HASH[index];
-    if(depthFirstEntry.hash == boardHash)
-    {
-      return depthFirstEntry;
-    }
+    table = null;
+    table = new long[(int)(buckets << BUCKET_SHIFT)];
+    bucketMask = (int)buckets - 1;
+    sizeMB = (int)((buckets * BUCKET_SIZE * 16) >> 20);
+    generation = 0;
+  }
+
+  public int getSizeMB()
+  {
+    return sizeMB;
+  }
+
+  /**
+   * Probes the table for the given hash, decoding a hit into the given entry.
+   * The hash move is left encoded; Move.decode() rebuilds it against a board.
+   *
+   * @return the entry, or null on a miss
+   */
+  public final HashEntry getEntry(long boardHash, HashEntry entry)
+  {
+    final long[] table = this.table;
+    int slot = (int)(boardHash & bucketMask) << BUCKET_SHIFT;
+    int end = slot + (BUCKET_SIZE << 1);
 
-    PositionHashtable.HashEntry alwaysStoreEntry = ALWAYS_STORE_HASH[index];
-    if(alwaysStoreEntry.hash == boardHash)
+    for(;slot < end;slot += 2)
     {
-      return alwaysStoreEntry;
-    }
+      long data = table[slot + 1];
+      if((table[slot] ^ data) != boardHash)
+      {
+        continue;
+      }
 
+      entry.hash = boardHash;
+      entry.depth = getDepth(data);
+      entry.score = (int)((data >>> SCORE_SHIFT) & SCORE_MASK) - SCORE_OFFSET;
+      entry.type = (byte)((data >>> TYPE_SHIFT) & TYPE_MASK);
+      entry.mateThreat = ((data >>> MATE_THREAT_SHIFT) & 1) != 0;
+
+      if(getGeneration(data) != generation)
+      {
+        // an earlier search wrote this: only mate scores survive, and they can't cut
+        if(Math.abs(entry.score) < Searcher.MATE - 300)
+        {
+          return null;
+        }
+        entry.depth = AGED_DEPTH;
+      }
+
+      entry.move = (int)(data & MOVE_MASK);
+      return entry;
+    }
 
     return null;
   }
 
-  public void putEntry(int depth, byte type, int score, long boardHash, Move move, boolean mateThreat)
+  public void putEntry(int depth, byte type, int score, long boardHash, int move, boolean mateThreat)
   {
-    int index = (int)(boardHash & HASH_MASK);
+    final long[] table = this.table;
+    final int generation = this.generation;
+    int slot = (int)(boardHash & bucketMask) << BUCKET_SHIFT;
+    int end = slot + (BUCKET_SIZE << 1);
 
-    HashEntry depthFirstEntry = DEPTH_FIRST_HASH[index];
+    // mates and stalemates are stored with 'infinite' depth
+    depth = Math.max(-DEPTH_OFFSET, Math.min(DEPTH_OFFSET - 1, depth));
 
-    if(depth > depthFirstEntry.depth)
+    // replace the same position if we know at least as much about it,
+    // otherwise the shallowest entry, treating older generations as aged
+    int replace = -1;
+    int replaceDepth = Integer.MAX_VALUE;
+    for(;slot < end;slot += 2)
     {
-      depthFirstEntry.hash = boardHash;
-      depthFirstEntry.depth = depth;
-      depthFirstEntry.score = score;
-      depthFirstEntry.type = type;
-      depthFirstEntry.mateThreat = mateThreat;
-      depthFirstEntry.move.moved = move.moved;
-      depthFirstEntry.move.fromSquare = move.fromSquare;
-      depthFirstEntry.move.toSquare = move.toSquare;
-      depthFirstEntry.move.taken = move.taken;
-      depthFirstEntry.move.promoteTo = move.promoteTo;
-      return;
-    }
+      long data = table[slot + 1];
+      if((table[slot] ^ data) == boardHash)
+      {
+        if(getGeneration(data) == generation && depth < getDepth(data) && type != EXACT_VALUE)
+        {
+          return;
+        }
+        replace = slot;
+        break;
+      }
 
-    HashEntry alwaysStoreEntry = ALWAYS_STORE_HASH[index];
-    if(depth >= alwaysStoreEntry.depth) {
-      alwaysStoreEntry.hash = boardHash;
-      alwaysStoreEntry.depth = depth;
-      alwaysStoreEntry.score = score;
-      alwaysStoreEntry.type = type;
-      alwaysStoreEntry.mateThreat = mateThreat;
-      alwaysStoreEntry.move.moved = move.moved;
-      alwaysStoreEntry.move.fromSquare = move.fromSquare;
-      alwaysStoreEntry.move.toSquare = move.toSquare;
-      alwaysStoreEntry.move.taken = move.taken;
-      alwaysStoreEntry.move.promoteTo = move.promoteTo;
+      int entryDepth = data == 0 ? Integer.MIN_VALUE :
+                       getGeneration(data) != generation ? AGED_DEPTH :
+                       getDepth(data);
+      if(entryDepth < replaceDepth)
+      {
+        replace = slot;
+        replaceDepth = entryDepth;
+      }
     }
+
+    long data = pack(depth, type, score, move, mateThreat, generation);
+    table[replace] = boardHash ^ data;
+    table[replace + 1] = data;
   }
 
+  /**
+   * Empties the table, splitting the work across the available processors.
+   */
   public void clear()
   {
-    for(int t = 0;t < HASH_SIZE;t++)
+    fill(table);
+    generation = 0;
+  }
+
+  /**
+   * Empties the table on a background thread and returns at once.  The generation
+   * is advanced first, so until the clear finishes the old entries are merely aged,
+   * and a search may safely start straight away.
+   */
+  public void clearInBackground()
+  {
+    final long[] table = this.table;
+    keepGeneration = false;
+    age();
+
+    Thread clearer = new Thread(new Runnable()
     {
-      DEPTH_FIRST_HASH[t].reset();
-      ALWAYS_STORE_HASH[t].reset();
-    }
+      public void run()
+      {
+        fill(table);
+      }
+    }, "PositionHashtable-clear");
+    clearer.setDaemon(true);
+    clearer.start();
   }
 
-  public void age()
+  private static void fill(final long[] table)
   {
-    for(int t = 0;t < HASH_SIZE;t++)
+    // at least 8MB a thread, otherwise starting threads costs more than it saves
+    int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), table.length >> 20));
+    if(threads == 1)
+    {
+      Arrays.fill(table, 0);
+      return;
+    }
+
+    Thread[] fillers = new Thread[threads];
+    int chunk = table.length / threads;
+    for(int i = 0;i < threads;i++)
     {
-      DEPTH_FIRST_HASH[t].depth = -101;
-      ALWAYS_STORE_HASH[t].depth = -101;
-      if(Math.abs(DEPTH_FIRST_HASH[t].score) < Searcher.MATE - 300)
+      final int from = i * chunk;
+      final int to = i == threads - 1 ? table.length : from + chunk;
+      fillers[i] = new Thread(new Runnable()
       {
-        DEPTH_FIRST_HASH[t].hash = 0;
+        public void run()
+        {
+          Arrays.fill(table, from, to, 0);
+        }
+      }, "PositionHashtable-fill-" + i);
+      fillers[i].start();
+    }
+
+    for(Thread filler : fillers)
+    {
+      try
+      {
+        filler.join();
       }
-      if(Math.abs(ALWAYS_STORE_HASH[t].score) < Searcher.MATE - 300)
+      catch (InterruptedException e)
       {
-        ALWAYS_STORE_HASH[t].hash = 0;
+        Thread.currentThread().interrupt();
       }
     }
   }
+
+  /**
+   * Makes the next age() do nothing, so the next search still takes hard hits from the
+   * entries of the last one, as after a ponder search on a move the opponent didn't play.
+   */
+  public void keepGeneration()
+  {
+    keepGeneration = true;
+  }
+
+  /**
+   * Starts a new search generation.  Entries written before this are aged:
+   * only mate scores are still returned, and never as hard hits.
+   */
+  public void age()
+  {
+    if(keepGeneration)
+    {
+      keepGeneration = false;
+      return;
+    }
+    if(generation == GENERATION_MASK)
+    {
+      // the stamp is about to wrap, entries from 4096 searches ago would look current
+      clear();
+      return;
+    }
+    ++generation;
+  }
+
+  private static int getDepth(long data)
+  {
+    return (int)((data >>> DEPTH_SHIFT) & DEPTH_MASK) - DEPTH_OFFSET;
+  }
+
+  private static int getGeneration(long data)
+  {
+    return (int)(data >>> GENERATION_SHIFT) & GENERATION_MASK;
+  }
+
+  private static long pack(int depth, byte type, int score, int move, boolean mateThreat, int generation)
+  {
+    score = Math.max(-Searcher.INFINITY, Math.min(Searcher.INFINITY, score));
+
+    return (move & MOVE_MASK) |
+           ((long)(score + SCORE_OFFSET) & SCORE_MASK) << SCORE_SHIFT |
+           ((long)(depth + DEPTH_OFFSET) & DEPTH_MASK) << DEPTH_SHIFT |
+           ((long)type & TYPE_MASK) << TYPE_SHIFT |
+           (mateThreat ? 1L : 0L) << MATE_THREAT_SHIFT |
+           ((long)generation & GENERATION_MASK) << GENERATION_SHIFT;
+  }
 }
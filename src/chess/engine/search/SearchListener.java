@@ -0,0 +1,17 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Move;
+
+/**
+ * Told about each iteration an IterativeSearch completes, e.g. to stream
+ * progress to a GUI.  Called on the searching thread.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public interface SearchListener
+{
+  void iterationComplete(int depth, int score, SearchStats stats, Move[] pv);
+}
@@ -31,19 +31,40 @@ public class SearchStats {
   public int pawnPushExtensions;
   public int recaptureExtensions;
   public int threatExtensions;
+  // the hash move alone held up in a verification search, or more than one move cut off
+  public int singularExtensions;
+  public int multiCuts;
+  // nodes cut off by their static score, and by a capture at reduced depth
+  public int reverseFutility;
+  public int probCuts;
   public int reduceFutile;
+  // from the late move reduction table, and those searched again at full depth
+  public int reduceLate;
+  public int reduceResearches;
+
+  // root searches repeated because the score fell outside the aspiration window
+  public int aspirationFailHighs;
+  public int aspirationFailLows;
+
+  // nodes searched by the helper threads of a parallel search
+  public long helperNodes;
+
+  // for the time manager: the legal moves at the root, and the nodes under the last iteration's best
+  public int rootMoves;
+  public int bestMoveNodes;
 
 
   public String toString() {
     return new StringBuilder()
             .append(" T: ").append(pad(time, 8))
             .append("  E/S: ").append(pad((int) ((double) evals / time), 8))
-            .append("  N/S: ").append(pad((int) ((double) nodes / time), 8))
+            .append("  N/S: ").append(pad((int) ((double) (nodes + helperNodes) / time), 8))
             .append("\nSearch      |   N: ").append(pad(nodes, 8))
             .append("    E: ").append(pad(evals, 8))
             .append("  PVN: ").append(pad(pvNodes, 8))
             .append("  ZWN: ").append(pad(zwNodes, 8))
             .append("   QN: ").append(pad(qNodes, 8))
+            .append("   HN: ").append(pad(helperNodes, 8))
             .append("\nHash        | HHH: ").append(pad(hardHashHits, 8))
             .append("  SHH: ").append(pad(softHashHits, 8))
             .append("  QHH: ").append(pad(qHashHits, 8))
@@ -54,10 +75,18 @@ public class SearchStats {
             .append("   DCX: ").append(pad(doubleCheckExtensions, 8))
             .append("   RX: ").append(pad(recaptureExtensions, 8))
             .append("   TX: ").append(pad(threatExtensions, 8))
+            .append("   SX: ").append(pad(singularExtensions, 8))
+            .append("   MC: ").append(pad(multiCuts, 8))
             .append("\nReductions  |  B: ").append(pad(reduceBoring, 8))
             .append("    M: ").append(pad(reduceMargin, 8))
             .append("    P: ").append(pad(reducePrune, 8))
-            .append("    F: ").append(pad(reduceFutile, 8)).toString();
+            .append("    F: ").append(pad(reduceFutile, 8))
+            .append("    L: ").append(pad(reduceLate, 8))
+            .append("    R: ").append(pad(reduceResearches, 8))
+            .append("\nPruning     |  RF: ").append(pad(reverseFutility, 8))
+            .append("   PC: ").append(pad(probCuts, 8))
+            .append("\nAspiration  |  FH: ").append(pad(aspirationFailHighs, 8))
+            .append("   FL: ").append(pad(aspirationFailLows, 8)).toString();
   }
 
   private String pad(Number value, int length) {
@@ -85,6 +114,15 @@ public class SearchStats {
     doubleCheckExtensions = 0;
     pawnPushExtensions = 0;
     recaptureExtensions = 0;
+    singularExtensions = 0;
+    multiCuts = 0;
+    reverseFutility = 0;
+    probCuts = 0;
+    reduceLate = 0;
+    reduceResearches = 0;
+    aspirationFailHighs = 0;
+    aspirationFailLows = 0;
+    helperNodes = 0;
   }
 }
 
@@ -24,4 +24,9 @@ public interface Searcher
 
   boolean isResearchAtRoot();
 
+  /**
+   * @param timeManager checked as the search goes, null to search until stopped
+   */
+  void setTimeManager(TimeManager timeManager);
+
 }
@@ -193,4 +193,8 @@ public class SimpleABSearch implements Searcher
   public void reset() {
     
   }
+
+  public void setTimeManager(TimeManager timeManager) {
+    // runs to its depth, or until stopped
+  }
 }
@@ -269,6 +269,7 @@ public class SimpleEvaluator implements BoardEvaluator {
 
   public int scorePosition(Board board, int alpha, int beta) {
     //if(DEBUG)System.err.println(board.toString());
+    board.updateAttacks();
 
     int score = board.materialScore;
 
@@ -1439,6 +1440,7 @@ public class SimpleEvaluator implements BoardEvaluator {
   public final int scoreAttackingPieces(Board board,
                                         Square kingSquare,
                                         int attackerColor) {
+    board.updateAttacks();
     adjacentScore = 0;
     stagingScore = 0;
     defendedAdjacentCount = KING_NEAR_AREA[defenderColor][kingSquare.index64].length + KING_PAWN_AREA[defenderColor][kingSquare.index64].length;
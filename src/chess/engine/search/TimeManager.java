@@ -0,0 +1,257 @@
+/* $Id$ */
+
+package chess.engine.search;
+
+import chess.engine.model.Move;
+
+/**
+ * Decides how long a search may run, from the clock, and checked by the search itself.
+ *
+ * start() sets two limits.  The soft limit is the move's share of the time left, plus the
+ * increments still to come, over the moves expected before the next time control.  The hard
+ * limit is a few times that, but never more than a part of the clock.
+ *
+ * After each iteration, iterationComplete() scales the soft limit:
+ *
+ * <pre>
+ *   stability   down while the best move stays the same, up when it keeps changing
+ *   score       up when the score dropped from the last iteration
+ *   nodes       down when most of the nodes went to the best move, e.g. an obvious recapture
+ * </pre>
+ *
+ * and says whether another iteration should be started.  One that likely wouldn't finish, a
+ * found mate, or a single legal move ends the search there.  Inside an iteration the search
+ * calls checkTime(), which stops it at the scaled soft limit, or while the root is failing
+ * low at the hard limit.
+ *
+ * Until start() is called, or after clear(), nothing limits the search, which is how a
+ * search pondering on the opponent's time runs.  A ponder hit calls start() then.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public class TimeManager
+{
+  // milliseconds held back on every move, for lag and the server or GUI
+  public static final long MOVE_OVERHEAD = 100;
+
+  // moves left to plan for when the clock doesn't say: this many at the start, falling to the minimum
+  private static final int MOVES_TO_GO = 40;
+  private static final int MIN_MOVES_TO_GO = 20;
+  // no single move may use more of the clock than this, or the last before the time control
+  private static final double MAX_CLOCK_FRACTION = 0.3;
+  private static final double LAST_MOVE_FRACTION = 0.8;
+  // the hard limit, as a multiple of the soft limit
+  private static final double HARD_LIMIT_SCALE = 4;
+  // an iteration started past this part of the scaled soft limit wouldn't finish
+  private static final double NEXT_ITERATION = 0.5;
+
+  // the soft limit is only scaled from this depth on; the first iterations are too noisy
+  private static final int STABLE_DEPTH = 4;
+  private static final double STABLE_SCALE = 0.7;
+  private static final double UNSTABLE_SCALE = 0.6;
+  // a score this far below the last iteration's gets FALLING_SCALE
+  private static final int SCORE_DROP = 45;
+  private static final double FALLING_SCALE = 1.5;
+  // less the part of an iteration's nodes that went to the best move
+  private static final double NODES_SCALE = 1.5;
+
+  private long moveOverhead = MOVE_OVERHEAD;
+
+  private volatile boolean active = false;
+  private volatile boolean timeUp = false;
+  private volatile long startTime;
+  private volatile long softLimit;
+  private volatile long hardLimit;
+  private volatile double scale = 1;
+  // a fixed time per move is used as it is, without scaling
+  private boolean fixed;
+
+  // search state, from iterationComplete()
+  private volatile int iterations;
+  private int lastBestMove;
+  private int lastScore;
+  private double bestMoveChanges;
+  private int lastNodes;
+
+
+  public void setMoveOverhead(long moveOverhead)
+  {
+    this.moveOverhead = moveOverhead;
+  }
+
+
+  /**
+   * Starts the clock for a move.
+   *
+   * @param timeLeft   milliseconds on our clock
+   * @param increment  milliseconds added after each move
+   * @param movesToGo  moves left to the next time control, 0 for sudden death
+   * @param moveNumber the game's move number, counted from 1
+   */
+  public void start(long timeLeft, long increment, int movesToGo, int moveNumber)
+  {
+    int moves = movesToGo > 0 ? Math.min(movesToGo, MOVES_TO_GO) : Math.max(MIN_MOVES_TO_GO, MOVES_TO_GO - moveNumber / 2);
+    long available = Math.max(0, timeLeft + increment * (moves - 1) - moveOverhead * moves);
+    long limit = Math.max(0, (long) (timeLeft * (movesToGo == 1 ? LAST_MOVE_FRACTION : MAX_CLOCK_FRACTION)) - moveOverhead);
+
+    softLimit = Math.min(available / moves, limit);
+    hardLimit = Math.min((long) (softLimit * HARD_LIMIT_SCALE), limit);
+    fixed = false;
+    begin();
+  }
+
+
+  /**
+   * Starts the clock for a move searched for a fixed time.
+   */
+  public void startFixed(long moveTime)
+  {
+    softLimit = hardLimit = Math.max(0, moveTime - moveOverhead);
+    fixed = true;
+    begin();
+  }
+
+
+  /**
+   * Starts the clock with limits worked out by the caller.  The soft limit is still scaled
+   * as the search goes; no overhead is taken off either.
+   */
+  public void start(long softLimit, long hardLimit)
+  {
+    this.softLimit = Math.max(0, softLimit);
+    this.hardLimit = Math.max(this.softLimit, hardLimit);
+    fixed = false;
+    begin();
+  }
+
+
+  private void begin()
+  {
+    startTime = System.currentTimeMillis();
+    timeUp = false;
+    active = true;
+  }
+
+
+  /**
+   * Takes the limits away, for a search that runs until it is stopped.
+   */
+  public void clear()
+  {
+    active = false;
+    timeUp = false;
+  }
+
+
+  /**
+   * Forgets the last search's iterations.  IterativeSearch calls this as it starts.
+   */
+  public void newSearch()
+  {
+    timeUp = false;
+    scale = 1;
+    iterations = 0;
+    lastBestMove = 0;
+    lastScore = 0;
+    bestMoveChanges = 0;
+    lastNodes = 0;
+  }
+
+
+  public boolean isActive()
+  {
+    return active;
+  }
+
+
+  public long getElapsed()
+  {
+    return System.currentTimeMillis() - startTime;
+  }
+
+
+  /**
+   * @return the soft limit as iterationComplete() last scaled it, in milliseconds
+   */
+  public long getSoftLimit()
+  {
+    return (long) (softLimit * scale);
+  }
+
+
+  public long getHardLimit()
+  {
+    return hardLimit;
+  }
+
+
+  /**
+   * Called by the search as it goes.  The search has no move to play until its first
+   * iteration completes, so it is never stopped before that.
+   *
+   * @param failingLow the root's best move has scored below what it was expected to
+   * @return true once the search should stop; it stays true until the next start()
+   */
+  public boolean checkTime(boolean failingLow)
+  {
+    if (!active || iterations == 0)
+    {
+      return false;
+    }
+    if (!timeUp)
+    {
+      long elapsed = getElapsed();
+      timeUp = elapsed >= hardLimit || (!failingLow && elapsed >= getSoftLimit());
+    }
+    return timeUp;
+  }
+
+
+  /**
+   * @return checkTime() has stopped the search
+   */
+  public boolean isTimeUp()
+  {
+    return timeUp;
+  }
+
+
+  /**
+   * Scales the soft limit by how the search is going.
+   *
+   * @return true if another iteration should be started
+   */
+  public boolean iterationComplete(int depth, int score, SearchStats stats, Move[] pv)
+  {
+    ++iterations;
+    int bestMove = pv[0].moved == null ? 0 : pv[0].encode();
+    int nodes = stats.nodes - lastNodes;
+    lastNodes = stats.nodes;
+
+    bestMoveChanges /= 2;
+    if (bestMove != lastBestMove && iterations > 1)
+    {
+      bestMoveChanges += 1;
+    }
+    if (depth >= STABLE_DEPTH && !fixed)
+    {
+      double stability = STABLE_SCALE + UNSTABLE_SCALE * bestMoveChanges;
+      double falling = score < lastScore - SCORE_DROP ? FALLING_SCALE : 1;
+      double effort = NODES_SCALE - (nodes > 0 ? Math.min(1, (double) stats.bestMoveNodes / nodes) : 0);
+      scale = stability * falling * effort;
+    }
+    lastBestMove = bestMove;
+    lastScore = score;
+
+    if (!active)
+    {
+      return true;
+    }
+    if (Math.abs(score) > Searcher.MATE - 300 || stats.rootMoves == 1)
+    {
+      return false;
+    }
+    return getElapsed() < Math.min(getSoftLimit() * NEXT_ITERATION, hardLimit);
+  }
+}
@@ -0,0 +1,153 @@
+/* $Id$ */
+
+package chess.engine.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Rook and bishop attacks by magic multiplication.
+ *
+ * The occupied squares that can block a slider on a square (its rays, less the edge squares)
+ * are multiplied by a per square magic number, and the top bits of the product index that
+ * square's slice of one shared attack table.  The magics are searched for once, from a fixed
+ * seed, when the class loads.
+ *
+ * Unlike the rotated bitboards this replaces, the board only has to keep its plain occupancy.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public final class MagicBitboards {
+  private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+  private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+  private static final long[] ROOK_MASKS = new long[64];
+  private static final long[] ROOK_MAGICS = new long[64];
+  private static final int[] ROOK_SHIFTS = new int[64];
+  private static final int[] ROOK_OFFSETS = new int[64];
+  private static final long[] ROOK_ATTACKS;
+
+  private static final long[] BISHOP_MASKS = new long[64];
+  private static final long[] BISHOP_MAGICS = new long[64];
+  private static final int[] BISHOP_SHIFTS = new int[64];
+  private static final int[] BISHOP_OFFSETS = new int[64];
+  private static final long[] BISHOP_ATTACKS;
+
+  static {
+    Random random = new Random(2718281828459045235L);
+    ROOK_ATTACKS = initialize(ROOK_DIRECTIONS, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS, ROOK_OFFSETS, random);
+    BISHOP_ATTACKS = initialize(BISHOP_DIRECTIONS, BISHOP_MASKS, BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_OFFSETS, random);
+  }
+
+  private MagicBitboards() {
+  }
+
+  /**
+   * @param square   Square.index64
+   * @param occupied the pieces that block
+   * @return the squares a rook on the square attacks, up to and including the first blocker each way
+   */
+  public static long rookAttacks(int square, long occupied) {
+    return ROOK_ATTACKS[ROOK_OFFSETS[square] + (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+  }
+
+  /**
+   * @param square   Square.index64
+   * @param occupied the pieces that block
+   * @return the squares a bishop on the square attacks, up to and including the first blocker each way
+   */
+  public static long bishopAttacks(int square, long occupied) {
+    return BISHOP_ATTACKS[BISHOP_OFFSETS[square] + (int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+  }
+
+  public static long queenAttacks(int square, long occupied) {
+    return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+  }
+
+  private static long[] initialize(int[][] directions, long[] masks, long[] magics, int[] shifts, int[] offsets, Random random) {
+    int size = 0;
+    for (int square = 0; square < 64; square++) {
+      masks[square] = slide(square, 0, directions, true);
+      int bits = Long.bitCount(masks[square]);
+      shifts[square] = 64 - bits;
+      offsets[square] = size;
+      size += 1 << bits;
+    }
+
+    long[] table = new long[size];
+    for (int square = 0; square < 64; square++) {
+      long mask = masks[square];
+      int count = 1 << Long.bitCount(mask);
+      long[] occupancies = new long[count];
+      long[] attacks = new long[count];
+
+      // every subset of the mask
+      long subset = 0;
+      for (int i = 0; i < count; i++) {
+        occupancies[i] = subset;
+        attacks[i] = slide(square, subset, directions, false);
+        subset = (subset - mask) & mask;
+      }
+
+      magics[square] = findMagic(occupancies, attacks, shifts[square], random);
+      for (int i = 0; i < count; i++) {
+        table[offsets[square] + (int) ((occupancies[i] * magics[square]) >>> shifts[square])] = attacks[i];
+      }
+    }
+    return table;
+  }
+
+  private static long findMagic(long[] occupancies, long[] attacks, int shift, Random random) {
+    long[] used = new long[occupancies.length];
+    boolean[] taken = new boolean[occupancies.length];
+    while (true) {
+      // sparse candidates work best
+      long magic = random.nextLong() & random.nextLong() & random.nextLong();
+
+      Arrays.fill(taken, false);
+      boolean fits = true;
+      for (int i = 0; i < occupancies.length && fits; i++) {
+        int index = (int) ((occupancies[i] * magic) >>> shift);
+        if (!taken[index]) {
+          taken[index] = true;
+          used[index] = attacks[i];
+        } else if (used[index] != attacks[i]) {
+          fits = false;
+        }
+      }
+      if (fits) {
+        return magic;
+      }
+    }
+  }
+
+  /**
+   * Walks the rays from a square.  As a mask, the last square of each ray is left off,
+   * since a piece there can't block anything further.
+   */
+  private static long slide(int square, long occupied, int[][] directions, boolean mask) {
+    long attacks = 0;
+    for (int[] direction : directions) {
+      int rank = (square >> 3) + direction[0];
+      int file = (square & 7) + direction[1];
+      while (rank >= 0 && rank < 8 && file >= 0 && file < 8) {
+        int next = (rank << 3) + file;
+        if (mask) {
+          int nextRank = rank + direction[0];
+          int nextFile = file + direction[1];
+          if (nextRank < 0 || nextRank > 7 || nextFile < 0 || nextFile > 7) {
+            break;
+          }
+        }
+        attacks |= 1L << next;
+        if ((occupied & (1L << next)) != 0) {
+          break;
+        }
+        rank += direction[0];
+        file += direction[1];
+      }
+    }
+    return attacks;
+  }
+}
@@ -36,14 +36,6 @@ public class MoveGeneration implements MoveGenerationConstants {
    */
   public static long[][][] attackVectors = new long[2][9][64];
   public static boolean[][][][] attacksFromTo = new boolean[2][9][64][64];
-  public static long[][] rook_attacks_r0 = new long[64][64];
-  public static long[][] rook_attacks_rl90 = new long[64][64];
-  public static long[][] bishop_attacks_rl45 = new long[64][64];
-  public static long[][] bishop_attacks_rr45 = new long[64][64];
-  public static long[][] rook_mobility_r0 = new long[64][64];
-  public static long[][] rook_mobility_rl90 = new long[64][64];
-  public static long[][] bishop_mobility_rl45 = new long[64][64];
-  public static long[][] bishop_mobility_rr45 = new long[64][64];
 
 
   /**
@@ -333,17 +325,14 @@ public class MoveGeneration implements MoveGenerationConstants {
   }
 
 
-  long pieces;
-  Piece piece;
-  Square pieceSquare;
-  int index;
   public int generateMoves(Move[] moves, Board board) {
-    index = 0;
-    pieces = board.pieceBoards[board.turn][Board.ALL_PIECES];
+    board.updateAttacks();
+    int index = 0;
+    long pieces = board.pieceBoards[board.turn][Board.ALL_PIECES];
     while (pieces != 0) {
-      pieceSquare = Board.SQUARES[Long.numberOfTrailingZeros(pieces)];
+      Square pieceSquare = Board.SQUARES[Long.numberOfTrailingZeros(pieces)];
       pieces &= pieceSquare.mask_off;
-      piece = board.boardSquares[pieceSquare.index128].piece;
+      Piece piece = board.boardSquares[pieceSquare.index128].piece;
       switch (piece.type) {
         case Piece.PAWN: {
           if (piece.color == 1) {
@@ -374,6 +363,98 @@ public class MoveGeneration implements MoveGenerationConstants {
     return index;
   }
 
+  /**
+   * The captures and promotions of generateMoves(), for a staged move picker.
+   * Together with generateQuietMoves() this gives exactly the moves of generateMoves().
+   */
+  public int generateCapturesAndPromotions(int index, Move[] moves, Board board) {
+    return generateStage(index, moves, board, true);
+  }
+
+  /**
+   * The moves of generateMoves() that neither capture nor promote.
+   */
+  public int generateQuietMoves(int index, Move[] moves, Board board) {
+    return generateStage(index, moves, board, false);
+  }
+
+  private int generateStage(int index, Move[] moves, Board board, boolean noisy) {
+    board.updateAttacks();
+    long pieces = board.pieceBoards[board.turn][Board.ALL_PIECES];
+    long targets = noisy ? board.pieceBoards[board.turn ^ 1][Board.ALL_PIECES] : ~board.allPieces;
+    while (pieces != 0) {
+      Square pieceSquare = Board.SQUARES[Long.numberOfTrailingZeros(pieces)];
+      pieces &= pieceSquare.mask_off;
+      Piece piece = board.boardSquares[pieceSquare.index128].piece;
+      if (piece.type == Piece.PAWN) {
+        // few enough moves that generating them all and keeping half is cheap
+        int start = index;
+        index += generatePieceMoves(index, moves, board, piece);
+        index = keep(moves, start, index, noisy);
+      } else {
+        long toSquares = piece.attacks & targets;
+        while (toSquares != 0) {
+          Square square = Board.SQUARES[Long.numberOfTrailingZeros(toSquares)];
+          toSquares &= square.mask_off;
+          if (piece.type == Piece.KING && board.isSquareCheckedByColor(square, piece.color ^ 1)) {
+            continue;
+          }
+          if (noisy) {
+            moves[index++].reset(pieceSquare, square, square, piece, board.boardSquares[square.index128].piece);
+          } else {
+            moves[index++].reset(pieceSquare, square, piece);
+          }
+        }
+        if (piece.type == Piece.KING && !noisy) {
+          index += piece.color == 1 ?
+                   generateWhiteCastlingMoves(index, moves, board, piece) :
+                   generateBlackCastlingMoves(index, moves, board, piece);
+        }
+      }
+    }
+    moves[index].moved = null;
+    return index;
+  }
+
+  /**
+   * Moves the captures and promotions (or everything else) between start and end to the front.
+   *
+   * @return the end of the kept moves
+   */
+  private static int keep(Move[] moves, int start, int end, boolean noisy) {
+    int index = start;
+    for (int i = start; i < end; i++) {
+      Move move = moves[i];
+      if ((move.taken != null || move.promoteTo != -1) == noisy) {
+        moves[i] = moves[index];
+        moves[index++] = move;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * The moves generateMoves() would produce for one piece.
+   */
+  public int generatePieceMoves(int index, Move[] moves, Board board, Piece piece) {
+    board.updateAttacks();
+    switch (piece.type) {
+      case Piece.PAWN: {
+        return piece.color == 1 ?
+               generateFullWhitePawnMoves(index, moves, board, piece) :
+               generateFullBlackPawnMoves(index, moves, board, piece);
+      }
+      case Piece.KING: {
+        return piece.color == 1 ?
+               generateFullWhiteKingMoves(index, moves, board, piece) :
+               generateFullBlackKingMoves(index, moves, board, piece);
+      }
+      default: {
+        return generateMovesFromAttacks(index, moves, board, piece);
+      }
+    }
+  }
+
   public int generatePawnMoves(Move[] moves, Board board) {
     int index = 0;
     long pieces = board.pieceBoards[board.turn][Board.ALL_PIECES];
@@ -515,7 +596,7 @@ public class MoveGeneration implements MoveGenerationConstants {
   public int generateBishopMoves(int index, Move[] moves, Board board, Piece piece) {
     int originalIndex = index;
 
-    long bishopMoves = (board.attacksDiaga1(piece.square.index64) | board.attacksDiagh1(piece.square.index64));
+    long bishopMoves = board.bishopAttacks(piece.square.index64);
     long capturesBoard = bishopMoves & board.pieceBoards[board.turn ^ 1][Board.ALL_PIECES];
     while (capturesBoard != 0) {
       int toSquareIndex = Long.numberOfTrailingZeros(capturesBoard);
@@ -538,7 +619,7 @@ public class MoveGeneration implements MoveGenerationConstants {
   public int generateRookMoves(int index, Move[] moves, Board board, Piece piece) {
     int originalIndex = index;
 
-    long rookMoves = (board.attacksRank(piece.square.index64) | board.attacksFile(piece.square.index64));
+    long rookMoves = board.rookAttacks(piece.square.index64);
     long capturesBoard = rookMoves & board.pieceBoards[board.turn ^ 1][Board.ALL_PIECES];
     while (capturesBoard != 0) {
       int toSquareIndex = Long.numberOfTrailingZeros(capturesBoard);
@@ -762,7 +843,7 @@ public class MoveGeneration implements MoveGenerationConstants {
     int squareIndex = piece.square.index128 + 15;
     if ((squareIndex & 0x88) == 0) {
       Board.BoardSquare toSquare = board.boardSquares[squareIndex];
-      if (toSquare.enPassentInfo[board.moveIndex]) {
+      if (board.enPassentSquares[board.moveIndex] == toSquare.square.index128) {
         Board.BoardSquare enPassentSquare = board.boardSquares[piece.square.index128 - 1];
         moves[index++].reset(piece.square, toSquare.square, enPassentSquare.square, piece, enPassentSquare.piece);
       }
@@ -773,7 +854,7 @@ public class MoveGeneration implements MoveGenerationConstants {
     if ((squareIndex & 0x88) == 0) {
       Board.BoardSquare toSquare = board.boardSquares[squareIndex];
       // en passent
-      if (toSquare.enPassentInfo[board.moveIndex]) {
+      if (board.enPassentSquares[board.moveIndex] == toSquare.square.index128) {
         Board.BoardSquare enPassentSquare = board.boardSquares[piece.square.index128 + 1];
         moves[index++].reset(piece.square, toSquare.square, enPassentSquare.square, piece, enPassentSquare.piece);
       }
@@ -930,7 +1011,7 @@ public class MoveGeneration implements MoveGenerationConstants {
     if (((piece.square.index128 - 15) & 0x88) == 0) {
       Board.BoardSquare toSquare = board.boardSquares[piece.square.index128 - 15];
       // en passent
-      if (toSquare.enPassentInfo[board.moveIndex]) {
+      if (board.enPassentSquares[board.moveIndex] == toSquare.square.index128) {
         Board.BoardSquare enPassentSquare = board.boardSquares[piece.square.index128 + 1];
         moves[index++].reset(piece.square, toSquare.square, enPassentSquare.square, piece, enPassentSquare.piece);
       }
@@ -940,7 +1021,7 @@ public class MoveGeneration implements MoveGenerationConstants {
     if (((piece.square.index128 - 17) & 0x88) == 0) {
       Board.BoardSquare toSquare = board.boardSquares[piece.square.index128 - 17];
       // en passent
-      if (toSquare.enPassentInfo[board.moveIndex]) {
+      if (board.enPassentSquares[board.moveIndex] == toSquare.square.index128) {
         Board.BoardSquare enPassentSquare = board.boardSquares[piece.square.index128 - 1];
         moves[index++].reset(piece.square, toSquare.square, enPassentSquare.square, piece, enPassentSquare.piece);
       }
@@ -1158,6 +1239,7 @@ public class MoveGeneration implements MoveGenerationConstants {
 
   // Evasion generation
   public int generateEvasions(int index, Move[] moves, Board board) {
+    board.updateAttacks();
     long checkers;
     Square kingSquare;
     // generate king moves
@@ -1250,14 +1332,14 @@ public class MoveGeneration implements MoveGenerationConstants {
             //  check for enpassent moves
             if (savingSquare.file > 0) {
               Piece piece = board.boardSquares[savingSquare.index128 - 1].piece;
-              if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.boardSquares[savingSquare.index128 + 16].enPassentInfo[board.moveIndex]) {
+              if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.enPassentSquares[board.moveIndex] == savingSquare.index128 + 16) {
                 moves[index++].reset(piece.square, board.boardSquares[savingSquare.index128 + 16].square, savingSquare, piece, board.boardSquares[savingSquare.index128].piece);
               }
             }
 
             if (savingSquare.file < 7) {
               Piece piece = board.boardSquares[savingSquare.index128 + 1].piece;
-              if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.boardSquares[savingSquare.index128 + 16].enPassentInfo[board.moveIndex]) {
+              if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.enPassentSquares[board.moveIndex] == savingSquare.index128 + 16) {
                 moves[index++].reset(piece.square, board.boardSquares[savingSquare.index128 + 16].square, savingSquare, piece, board.boardSquares[savingSquare.index128].piece);
               }
             }
@@ -1287,14 +1369,14 @@ public class MoveGeneration implements MoveGenerationConstants {
           //  check for enpassent moves
           if (savingSquare.file > 0) {
             Piece piece = board.boardSquares[savingSquare.index128 - 1].piece;
-            if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.boardSquares[savingSquare.index128 - 16].enPassentInfo[board.moveIndex]) {
+            if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.enPassentSquares[board.moveIndex] == savingSquare.index128 - 16) {
               moves[index++].reset(piece.square, board.boardSquares[savingSquare.index128 - 16].square, savingSquare, piece, board.boardSquares[savingSquare.index128].piece);
             }
           }
 
           if (savingSquare.file < 7) {
             Piece piece = board.boardSquares[savingSquare.index128 + 1].piece;
-            if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.boardSquares[savingSquare.index128 - 16].enPassentInfo[board.moveIndex]) {
+            if (piece != null && piece.type == Piece.PAWN && piece.color == 1 && board.enPassentSquares[board.moveIndex] == savingSquare.index128 - 16) {
               moves[index++].reset(piece.square, board.boardSquares[savingSquare.index128 - 16].square, savingSquare, piece, board.boardSquares[savingSquare.index128].piece);
             }
           }
@@ -1309,6 +1391,7 @@ public class MoveGeneration implements MoveGenerationConstants {
   }
 
   public int generateChecks(int index, Move[] moves, Board board) {
+    board.updateAttacks();
     Square kingSquare;
     // generate king moves
     if (board.turn == 1) {
@@ -1398,8 +1481,8 @@ public class MoveGeneration implements MoveGenerationConstants {
     }
 
 /*
-    long attackers = (board.pieceBoards[color][Piece.BISHOP] | board.pieceBoards[color][Piece.QUEEN]) & (board.attacksDiaga1(square.index64) | board.attacksDiagh1(square.index64));
-    attackers |= (board.pieceBoards[color][Piece.ROOK] | board.pieceBoards[color][Piece.QUEEN]) & (board.attacksFile(square.index64) | board.attacksRank(square.index64));
+    long attackers = (board.pieceBoards[color][Piece.BISHOP] | board.pieceBoards[color][Piece.QUEEN]) & board.bishopAttacks(square.index64);
+    attackers |= (board.pieceBoards[color][Piece.ROOK] | board.pieceBoards[color][Piece.QUEEN]) & board.rookAttacks(square.index64);
 */
 
     for (candidateAttackers = attackVectors[color][Piece.ROOK][square.index64] & rooksAndQueens;
@@ -1418,14 +1501,14 @@ public class MoveGeneration implements MoveGenerationConstants {
     long attackers, eachAttacker;
 
     attackers = eachAttacker = (board.pieceBoards[color][Piece.BISHOP] | board.pieceBoards[color][Piece.QUEEN]) &
-            (board.attacksDiaga1(square.index64) | board.attacksDiagh1(square.index64));
+            board.bishopAttacks(square.index64);
 
 
     while (eachAttacker != 0) {
       Square pieceSquare = Board.SQUARES[Long.numberOfTrailingZeros(eachAttacker)];
       eachAttacker &= pieceSquare.mask_off;
       long xrayAttackers = (board.pieceBoards[color][Piece.BISHOP] | board.pieceBoards[color][Piece.QUEEN]) &
-              (board.attacksDiaga1(pieceSquare.index64) | board.attacksDiagh1(pieceSquare.index64)) &
+              board.bishopAttacks(pieceSquare.index64) &
               shadowVectors[square.index128][pieceSquare.index128];
       attackers |= xrayAttackers;
       eachAttacker |= xrayAttackers;
@@ -1438,14 +1521,14 @@ public class MoveGeneration implements MoveGenerationConstants {
     long attackers, eachAttacker;
 
     attackers = eachAttacker = (board.pieceBoards[color][Piece.ROOK] | board.pieceBoards[color][Piece.QUEEN]) &
-            (board.attacksRank(square.index64) | board.attacksFile(square.index64));
+            board.rookAttacks(square.index64);
 
 
     while (eachAttacker != 0) {
       Square pieceSquare = Board.SQUARES[Long.numberOfTrailingZeros(eachAttacker)];
       eachAttacker &= pieceSquare.mask_off;
       long xrayAttackers = (board.pieceBoards[color][Piece.ROOK] | board.pieceBoards[color][Piece.QUEEN]) &
-              (board.attacksRank(pieceSquare.index64) | board.attacksFile(pieceSquare.index64)) &
+              board.rookAttacks(pieceSquare.index64) &
               shadowVectors[square.index128][pieceSquare.index128];
       attackers |= xrayAttackers;
       eachAttacker |= xrayAttackers;
@@ -1484,8 +1567,8 @@ public class MoveGeneration implements MoveGenerationConstants {
   public long getAttackersNoXRay(Board board, Square square, int color) {
     return (attackVectors[color][Piece.PAWN][square.index64] & board.pieceBoards[color][Piece.PAWN]) |
             (attackVectors[color][Piece.KNIGHT][square.index64] & board.pieceBoards[color][Piece.KNIGHT]) |
-            (((board.attacksDiaga1(square.index64) | board.attacksDiagh1(square.index64)) & (board.pieceBoards[color][Piece.QUEEN] | board.pieceBoards[color][Piece.BISHOP]))) |
-            (((board.attacksRank(square.index64) | board.attacksFile(square.index64)) & (board.pieceBoards[color][Piece.QUEEN] | board.pieceBoards[color][Piece.ROOK]))) |
+            ((board.bishopAttacks(square.index64) & (board.pieceBoards[color][Piece.QUEEN] | board.pieceBoards[color][Piece.BISHOP]))) |
+            ((board.rookAttacks(square.index64) & (board.pieceBoards[color][Piece.QUEEN] | board.pieceBoards[color][Piece.ROOK]))) |
             (attackVectors[color][Piece.KING][square.index64] & board.pieceBoards[color][Piece.KING]);
   }
 
@@ -1593,6 +1676,7 @@ public class MoveGeneration implements MoveGenerationConstants {
 
 
   public int generateCaptures(int index, Move[] moves, Board board) {
+    board.updateAttacks();
     long pieces = board.pieceBoards[board.turn][Board.ALL_PIECES];
     while (pieces != 0) {
 
@@ -1649,280 +1733,6 @@ public class MoveGeneration implements MoveGenerationConstants {
   }
 
 
-  public static int init_r90[] = {
-          56, 48, 40, 32, 24, 16, 8, 0,
-          57, 49, 41, 33, 25, 17, 9, 1,
-          58, 50, 42, 34, 26, 18, 10, 2,
-          59, 51, 43, 35, 27, 19, 11, 3,
-          60, 52, 44, 36, 28, 20, 12, 4,
-          61, 53, 45, 37, 29, 21, 13, 5,
-          62, 54, 46, 38, 30, 22, 14, 6,
-          63, 55, 47, 39, 31, 23, 15, 7
-  };
-
-  public static int init_l90[] = {
-          7, 15, 23, 31, 39, 47, 55, 63,
-          6, 14, 22, 30, 38, 46, 54, 62,
-          5, 13, 21, 29, 37, 45, 53, 61,
-          4, 12, 20, 28, 36, 44, 52, 60,
-          3, 11, 19, 27, 35, 43, 51, 59,
-          2, 10, 18, 26, 34, 42, 50, 58,
-          1, 9, 17, 25, 33, 41, 49, 57,
-          0, 8, 16, 24, 32, 40, 48, 56
-  };
-
-  public static int init_l45[] = {
-          0, 2, 5, 9, 14, 20, 27, 35,
-          1, 4, 8, 13, 19, 26, 34, 42,
-          3, 7, 12, 18, 25, 33, 41, 48,
-          6, 11, 17, 24, 32, 40, 47, 53,
-          10, 16, 23, 31, 39, 46, 52, 57,
-          15, 22, 30, 38, 45, 51, 56, 60,
-          21, 29, 37, 44, 50, 55, 59, 62,
-          28, 36, 43, 49, 54, 58, 61, 63
-  };
-
-  public static int init_ul45[] = {
-          0, 8, 1, 16, 9, 2, 24, 17,
-          10, 3, 32, 25, 18, 11, 4, 40,
-          33, 26, 19, 12, 5, 48, 41, 34,
-          27, 20, 13, 6, 56, 49, 42, 35,
-          28, 21, 14, 7, 57, 50, 43, 36,
-          29, 22, 15, 58, 51, 44, 37, 30,
-          23, 59, 52, 45, 38, 31, 60, 53,
-          46, 39, 61, 54, 47, 62, 55, 63
-  };
-
-  public static int init_r45[] = {
-          28, 21, 15, 10, 6, 3, 1, 0,
-          36, 29, 22, 16, 11, 7, 4, 2,
-          43, 37, 30, 23, 17, 12, 8, 5,
-          49, 44, 38, 31, 24, 18, 13, 9,
-          54, 50, 45, 39, 32, 25, 19, 14,
-          58, 55, 51, 46, 40, 33, 26, 20,
-          61, 59, 56, 52, 47, 41, 34, 27,
-          63, 62, 60, 57, 53, 48, 42, 35
-  };
-
-  public static int init_ur45[] = {
-          7, 6, 15, 5, 14, 23, 4, 13,
-          22, 31, 3, 12, 21, 30, 39, 2,
-          11, 20, 29, 38, 47, 1, 10, 19,
-          28, 37, 46, 55, 0, 9, 18, 27,
-          36, 45, 54, 63, 8, 17, 26, 35,
-          44, 53, 62, 16, 25, 34, 43, 52,
-          61, 24, 33, 42, 51, 60, 32, 41,
-          50, 59, 40, 49, 58, 48, 57, 56
-  };
-
-  public static int diagonal_length[] = {
-          1, 2, 2, 3, 3, 3, 4, 4,
-          4, 4, 5, 5, 5, 5, 5, 6,
-          6, 6, 6, 6, 6, 7, 7, 7,
-          7, 7, 7, 7, 8, 8, 8, 8,
-          8, 8, 8, 8, 7, 7, 7, 7,
-          7, 7, 7, 6, 6, 6, 6, 6,
-          6, 5, 5, 5, 5, 5, 4, 4,
-          4, 4, 3, 3, 3, 2, 2, 1
-  };
-
-  public static int bishop_shift_rl45[] = {
-          64, 62, 59, 55, 50, 44, 37, 29,
-          62, 59, 55, 50, 44, 37, 29, 22,
-          59, 55, 50, 44, 37, 29, 22, 16,
-          55, 50, 44, 37, 29, 22, 16, 11,
-          50, 44, 37, 29, 22, 16, 11, 7,
-          44, 37, 29, 22, 16, 11, 7, 4,
-          37, 29, 22, 16, 11, 7, 4, 2,
-          29, 22, 16, 11, 7, 4, 2, 1
-  };
-  public static int bishop_shift_rr45[] = {
-          29, 37, 44, 50, 55, 59, 62, 64,
-          22, 29, 37, 44, 50, 55, 59, 62,
-          16, 22, 29, 37, 44, 50, 55, 59,
-          11, 16, 22, 29, 37, 44, 50, 55,
-          7, 11, 16, 22, 29, 37, 44, 50,
-          4, 7, 11, 16, 22, 29, 37, 44,
-          2, 4, 7, 11, 16, 22, 29, 37,
-          1, 2, 4, 7, 11, 16, 22, 29
-  };
-
-  {
-    int diag_sq[] = {
-            0, 1, 0, 2, 1, 0, 3, 2,
-            1, 0, 4, 3, 2, 1, 0, 5,
-            4, 3, 2, 1, 0, 6, 5, 4,
-            3, 2, 1, 0, 7, 6, 5, 4,
-            3, 2, 1, 0, 6, 5, 4, 3,
-            2, 1, 0, 5, 4, 3, 2, 1,
-            0, 4, 3, 2, 1, 0, 3, 2,
-            1, 0, 2, 1, 0, 1, 0, 0
-    };
-
-    int bias_rl45[] = {
-            0, 1, 1, 3, 3, 3, 6, 6,
-            6, 6, 10, 10, 10, 10, 10, 15,
-            15, 15, 15, 15, 15, 21, 21, 21,
-            21, 21, 21, 21, 28, 28, 28, 28,
-            28, 28, 28, 28, 36, 36, 36, 36,
-            36, 36, 36, 43, 43, 43, 43, 43,
-            43, 49, 49, 49, 49, 49, 54, 54,
-            54, 54, 58, 58, 58, 61, 61, 63
-    };
-
-    int square, pcs, attacks;
-    int rsq, tsq;
-    int mask;
-    int sq;
-    int i;
-
-/*
- initialize the rotated attack board that is based on the
- normal chess
- */
-    for (square = 0; square < 64; square++) {
-      for (i = 0; i < 64; i++) {
-        rook_attacks_r0[square][i] = 0;
-        rook_mobility_r0[square][i] = 0;
-      }
-      for (pcs = 0; pcs < 64; pcs++) {
-        attacks = initializeFindAttacks((square & 7), pcs << 1, 8);
-        while (attacks != 0) {
-          sq = 7 - first_one_8bit[attacks];
-          rook_attacks_r0[square][pcs] |= Board.SQUARES[(square & 56) + (sq)].mask_on;
-          attacks = attacks & (~(1 << (sq)));
-        }
-        rook_mobility_r0[square][pcs] = Long.bitCount(rook_attacks_r0[square][pcs]);
-      }
-    }
-/*
- initialize the rotated attack board that is based on one that
- rotated left 90 degrees (which lines up a file horizontally,
- rather than its normal vertical orientation.)
- */
-    for (square = 0; square < 64; square++) {
-      for (i = 0; i < 64; i++) {
-        rook_attacks_rl90[square][i] = 0;
-        rook_mobility_rl90[square][i] = 0;
-      }
-      for (pcs = 0; pcs < 64; pcs++) {
-        attacks = initializeFindAttacks(Board.rank(square), pcs << 1, 8);
-        while (attacks != 0) {
-          sq = first_one_8bit[attacks];
-          rook_attacks_rl90[square][pcs] |= Board.SQUARES[init_r90[((square & 7) << 3) + (sq)]].mask_on;
-          attacks = attacks & (~(1 << (7 - sq)));
-        }
-        rook_mobility_rl90[square][pcs] =
-                Long.bitCount(rook_attacks_rl90[square][pcs]);
-      }
-    }
-/*
- initialize the rotated attack board that is based on one that is
- rotated left 45 degrees (which lines up the (a8-h1) diagonal
- horizontally.
- */
-    for (square = 0; square < 64; square++) {
-      for (i = 0; i < 64; i++) {
-        bishop_attacks_rl45[square][i] = 0;
-        bishop_mobility_rl45[square][i] = 0;
-      }
-      mask = (1 << diagonal_length[init_l45[square]]) - 1;
-      for (pcs = 0; pcs < 64; pcs++) {
-        rsq = init_l45[square];
-        tsq = diag_sq[rsq];
-        attacks =
-                initializeFindAttacks(tsq, (pcs << 1) & mask,
-                        diagonal_length[rsq]) << (8 - diagonal_length[rsq]);
-        while (attacks != 0) {
-          sq = first_one_8bit[attacks];
-          bishop_attacks_rl45[square][pcs] |= Board.SQUARES[init_ul45[sq + bias_rl45[rsq]]].mask_on;
-          attacks = attacks & (~(1 << (7 - sq)));
-        }
-      }
-      for (pcs = 0; pcs < 64; pcs++) {
-        bishop_mobility_rl45[square][pcs] =
-                Long.bitCount(bishop_attacks_rl45[square][pcs]);
-      }
-    }
-/*
- initialize the rotated attack board that is based on one that is
- rotated right 45 degrees (which lines up the (a1-h8) diagonal
- horizontally,
- */
-    for (square = 0; square < 64; square++) {
-      for (i = 0; i < 64; i++) {
-        bishop_attacks_rr45[square][i] = 0;
-        bishop_mobility_rr45[square][i] = 0;
-      }
-      mask = (1 << diagonal_length[init_r45[square]]) - 1;
-      for (pcs = 0; pcs < 64; pcs++) {
-        rsq = init_r45[square];
-        tsq = diag_sq[rsq];
-        attacks =
-                initializeFindAttacks(tsq, (pcs << 1) & mask,
-                        diagonal_length[rsq]) << (8 - diagonal_length[rsq]);
-        while (attacks != 0) {
-          sq = first_one_8bit[attacks];
-          bishop_attacks_rr45[square][pcs] |= Board.SQUARES[init_ur45[sq + bias_rl45[rsq]]].mask_on;
-          attacks = attacks & (~(1 << (7 - sq)));
-        }
-      }
-      for (pcs = 0; pcs < 64; pcs++) {
-        bishop_mobility_rr45[square][pcs] =
-                Long.bitCount(bishop_attacks_rr45[square][pcs]);
-      }
-    }
-  }
-
-
-  /*
-  *******************************************************************************
-  *                                                                             *
-  *   InitlializeFindAttacks() is used to find the attacks from <square> that   *
-  *   exist on the 8-bit vector supplied as <pieces>.  <pieces> represents a    *
-  *   rank, file or diagonal, based on the rotated bit-boards.                  *
-  *                                                                             *
-  *******************************************************************************
-  */
-  public static int initializeFindAttacks(int square, int pieces, int length) {
-    int result, start;
-
-    result = 0;
-    /*
-    ************************************************************
-    *                                                          *
-    *   find attacks to left of <square>.                      *
-    *                                                          *
-    ************************************************************
-    */
-    if (square < 7) {
-      start = 1 << (square + 1);
-      while (start < 256) {
-        result = result | start;
-        if ((pieces & start) != 0)
-          break;
-        start = start << 1;
-      }
-    }
-    /*
-    ************************************************************
-    *                                                          *
-    *   find attacks to right of <square>.                     *
-    *                                                          *
-    ************************************************************
-    */
-    if (square > 0) {
-      start = 1 << (square - 1);
-      while (start > 0) {
-        result = result | start;
-        if ((pieces & start) != 0)
-          break;
-        start = start >>> 1;
-      }
-    }
-    return (result & ((1 << length) - 1));
-  }
-
   public static int[] first_one_8bit = new int[256];
   public static int[] last_one_8bit = new int[256];
   public static int[] first_one = new int[65536];
@@ -0,0 +1,362 @@
+/* $Id$ */
+
+package chess.engine.utils;
+
+import chess.engine.model.Board;
+import chess.engine.model.Move;
+import chess.engine.model.Piece;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Perft, divide, and a move generation throughput benchmark.
+ *
+ * <pre>
+ * java chess.engine.utils.Perft                       runs the suite, then the generator benchmark
+ * java chess.engine.utils.Perft perft 5 [fen]         counts leaf nodes
+ * java chess.engine.utils.Perft divide 5 [fen]        counts leaf nodes under each root move
+ * java chess.engine.utils.Perft lazy ...               any of the above on boards with lazy attack maps
+ * </pre>
+ *
+ * The generators are pseudo legal, so a move counts only if it doesn't leave the mover in check.
+ *
+ * @author Joshua Levine <levinester@gmail.com>
+ * @version $Revision$ $Name$ $Date$
+ */
+public class Perft
+{
+  public static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+  /**
+   * fen, depth, expected nodes
+   */
+  public static final Object[][] SUITE = {
+          {START_POSITION, 5, 4865609L},
+          // Kiwipete: castling, pins, and en passent
+          {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 4, 4085603L},
+          // en passent discovered checks along the rank
+          {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 5, 674624L},
+          // promotions, and castling rights lost to captured rooks
+          {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 4, 422333L},
+          {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 4, 2103487L},
+          {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 4, 3894594L},
+  };
+
+  private static final int MAX_PLY = 64;
+  // positions per suite entry for the generator benchmark
+  private static final int SAMPLES = 64;
+  private static final int ROUNDS = 2000;
+
+  private MoveGeneration moveGeneration = new MoveGeneration();
+  private Move[][] moves = new Move[MAX_PLY][];
+  private final boolean lazyAttacks;
+
+  public Perft()
+  {
+    this(false);
+  }
+
+  /**
+   * @param lazyAttacks run on boards that build their attack maps on demand, see Board.lazyAttacks
+   */
+  public Perft(boolean lazyAttacks)
+  {
+    this.lazyAttacks = lazyAttacks;
+    for (int i = 0; i < MAX_PLY; i++)
+    {
+      moves[i] = Move.createMoves(256);
+    }
+  }
+
+  public static Board createBoard(String fen)
+  {
+    return createBoard(fen, false);
+  }
+
+  public static Board createBoard(String fen, boolean lazyAttacks)
+  {
+    Board board = new Board(lazyAttacks);
+    board.setFENPosition(fen);
+    return board;
+  }
+
+  public long perft(Board board, int depth)
+  {
+    return perft(board, depth, 0);
+  }
+
+  private long perft(Board board, int depth, int ply)
+  {
+    if (depth == 0)
+    {
+      return 1;
+    }
+
+    Move[] plyMoves = moves[ply];
+    int moveCount = moveGeneration.generateFullMoves(plyMoves, board);
+    long nodes = 0;
+    for (int i = 0; i < moveCount; i++)
+    {
+      Move move = plyMoves[i];
+      board.make(move);
+      if (!isMoverInCheck(board))
+      {
+        nodes += depth == 1 ? 1 : perft(board, depth - 1, ply + 1);
+      }
+      board.unmake(move);
+    }
+    return nodes;
+  }
+
+  /**
+   * Prints the leaf count under each legal root move, for finding where a generator goes wrong.
+   */
+  public long divide(Board board, int depth)
+  {
+    Move[] rootMoves = Move.createMoves(256);
+    int moveCount = moveGeneration.generateFullMoves(rootMoves, board);
+    long total = 0;
+    for (int i = 0; i < moveCount; i++)
+    {
+      Move move = rootMoves[i];
+      board.make(move);
+      if (!isMoverInCheck(board))
+      {
+        long nodes = perft(board, depth - 1, 1);
+        total += nodes;
+        System.out.println(move.toUCIString() + ": " + nodes);
+      }
+      board.unmake(move);
+    }
+    System.out.println("Moves: " + moveCount + "  Nodes: " + total);
+    return total;
+  }
+
+  private static boolean isMoverInCheck(Board board)
+  {
+    Piece king = board.turn == 1 ? board.blackKing : board.whiteKing;
+    return board.isSquareCheckedByColor(king.square, board.turn);
+  }
+
+  private static boolean isInCheck(Board board)
+  {
+    Piece king = board.turn == 1 ? board.whiteKing : board.blackKing;
+    return board.isSquareCheckedByColor(king.square, board.turn ^ 1);
+  }
+
+  /**
+   * Runs the suite, checking every count.
+   *
+   * @return true if every count matched
+   */
+  public boolean runSuite()
+  {
+    boolean passed = true;
+    long totalNodes = 0;
+    long totalTime = 0;
+    for (Object[] entry : SUITE)
+    {
+      String fen = (String) entry[0];
+      int depth = (Integer) entry[1];
+      long expected = (Long) entry[2];
+
+      Board board = createBoard(fen, lazyAttacks);
+      long start = System.nanoTime();
+      long nodes = perft(board, depth);
+      long time = System.nanoTime() - start;
+      totalNodes += nodes;
+      totalTime += time;
+
+      passed &= nodes == expected;
+      System.out.println((nodes == expected ? "OK   " : "FAIL ") +
+                         "d" + depth + " " + pad(nodes, 10) + " (expected " + pad(expected, 10) + ")  " +
+                         pad(perSecond(nodes, time), 10) + " n/s  " + fen);
+    }
+    System.out.println("Perft: " + totalNodes + " nodes, " + perSecond(totalNodes, totalTime) + " n/s");
+    return passed;
+  }
+
+  /**
+   * Times generateFullMoves, generateEvasions, generateChecks, and make/unmake
+   * over positions sampled two plies into every suite position.
+   */
+  public void runBenchmark()
+  {
+    List<Board> quiet = new ArrayList<Board>();
+    List<Board> checked = new ArrayList<Board>();
+    for (Object[] entry : SUITE)
+    {
+      sample(createBoard((String) entry[0], lazyAttacks), 2, 0, quiet, checked, new int[1]);
+    }
+    System.out.println("Samples: " + quiet.size() + " not in check, " + checked.size() + " in check");
+
+    List<Board> all = new ArrayList<Board>(quiet);
+    all.addAll(checked);
+
+    Move[] list = Move.createMoves(256);
+
+    long generated = 0;
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      for (Board board : all)
+      {
+        generated += moveGeneration.generateFullMoves(list, board);
+      }
+    }
+    report("generateFullMoves", (long) ROUNDS * all.size(), generated, System.nanoTime() - start);
+
+    generated = 0;
+    start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      for (Board board : checked)
+      {
+        generated += moveGeneration.generateEvasions(0, list, board);
+      }
+    }
+    report("generateEvasions", (long) ROUNDS * checked.size(), generated, System.nanoTime() - start);
+
+    generated = 0;
+    start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      for (Board board : quiet)
+      {
+        generated += moveGeneration.generateChecks(0, list, board);
+      }
+    }
+    report("generateChecks", (long) ROUNDS * quiet.size(), generated, System.nanoTime() - start);
+
+    Move[][] sampleMoves = new Move[all.size()][];
+    int[] sampleCounts = new int[all.size()];
+    for (int i = 0; i < all.size(); i++)
+    {
+      sampleMoves[i] = Move.createMoves(256);
+      sampleCounts[i] = moveGeneration.generateFullMoves(sampleMoves[i], all.get(i));
+    }
+    long made = 0;
+    start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      for (int i = 0; i < sampleMoves.length; i++)
+      {
+        Board board = all.get(i);
+        Move[] boardMoves = sampleMoves[i];
+        for (int m = 0; m < sampleCounts[i]; m++)
+        {
+          board.make(boardMoves[m]);
+          board.unmake(boardMoves[m]);
+        }
+        made += sampleCounts[i];
+      }
+    }
+    report("make/unmake", made, made, System.nanoTime() - start);
+  }
+
+  private void sample(Board board, int depth, int ply, List<Board> quiet, List<Board> checked, int[] seen)
+  {
+    if (depth == 0)
+    {
+      // spread the samples over the tree instead of taking the first few
+      if (seen[0]++ % 8 == 0 && quiet.size() + checked.size() < SAMPLES * SUITE.length)
+      {
+        (isInCheck(board) ? checked : quiet).add(board.copy());
+      }
+      return;
+    }
+
+    Move[] plyMoves = moves[ply];
+    int moveCount = moveGeneration.generateFullMoves(plyMoves, board);
+    for (int i = 0; i < moveCount; i++)
+    {
+      Move move = plyMoves[i];
+      board.make(move);
+      if (!isMoverInCheck(board))
+      {
+        sample(board, depth - 1, ply + 1, quiet, checked, seen);
+      }
+      board.unmake(move);
+    }
+  }
+
+  private static void report(String name, long calls, long generated, long nanos)
+  {
+    System.out.println(padRight(name, 20) +
+                       pad(perSecond(calls, nanos), 12) + " calls/s " +
+                       pad(perSecond(generated, nanos), 12) + " moves/s");
+  }
+
+  private static long perSecond(long count, long nanos)
+  {
+    return nanos == 0 ? 0 : (long) (count * 1000000000D / nanos);
+  }
+
+  private static String pad(long value, int width)
+  {
+    String string = String.valueOf(value);
+    while (string.length() < width)
+    {
+      string = " " + string;
+    }
+    return string;
+  }
+
+  private static String padRight(String string, int width)
+  {
+    while (string.length() < width)
+    {
+      string = string + " ";
+    }
+    return string;
+  }
+
+  private static String getFEN(String[] args, int from)
+  {
+    if (args.length <= from)
+    {
+      return START_POSITION;
+    }
+    StringBuilder fen = new StringBuilder();
+    for (int i = from; i < args.length; i++)
+    {
+      fen.append(args[i]).append(' ');
+    }
+    return fen.toString();
+  }
+
+  public static void main(String[] args)
+  {
+    boolean lazyAttacks = args.length > 0 && args[0].equals("lazy");
+    if (lazyAttacks)
+    {
+      String[] rest = new String[args.length - 1];
+      System.arraycopy(args, 1, rest, 0, rest.length);
+      args = rest;
+    }
+    Perft perft = new Perft(lazyAttacks);
+
+    if (args.length > 1 && args[0].equals("perft"))
+    {
+      Board board = createBoard(getFEN(args, 2), lazyAttacks);
+      long start = System.nanoTime();
+      long nodes = perft.perft(board, Integer.parseInt(args[1]));
+      long time = System.nanoTime() - start;
+      System.out.println("Nodes: " + nodes + "  " + perSecond(nodes, time) + " n/s");
+    }
+    else if (args.length > 1 && args[0].equals("divide"))
+    {
+      perft.divide(createBoard(getFEN(args, 2), lazyAttacks), Integer.parseInt(args[1]));
+    }
+    else
+    {
+      boolean passed = perft.runSuite();
+      perft.runBenchmark();
+      if (!passed)
+      {
+        System.exit(1);
+      }
+    }
+  }
+}
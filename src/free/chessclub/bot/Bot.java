@@ -41,6 +41,7 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.util.EntityUtils;
 import twitter4j.TwitterException;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -51,6 +52,15 @@ public class Bot extends JinFreechessConnection implements GameListener {
   public static int TWEET_SOFT = 3;
   public static final String SET_TWEET_MAX = "tweetMax";
   public static final String SET_TWEET_SOFT = "tweetSoft";
+  public static int THREADS = Integer.getInteger("donkeyfactory.threads", Runtime.getRuntime().availableProcessors());
+  public static final String SET_THREADS = "threads";
+  public static int HASH_MB = Integer.getInteger("donkeyfactory.hash", PositionHashtable.DEFAULT_SIZE_MB);
+  public static final String SET_HASH = "hash";
+  public static boolean PONDER = !Boolean.getBoolean("donkeyfactory.noponder");
+  public static final String SET_PONDER = "ponder";
+  public static int OVERHEAD = Integer.getInteger("donkeyfactory.overhead", (int) TimeManager.MOVE_OVERHEAD);
+  public static final String SET_OVERHEAD = "overhead";
+  public static String BOOK = System.getProperty("donkeyfactory.book", "book.bin");
   public boolean autoseek = false;
   public boolean tellOwner = true;
   public String owner = "tarabas";
@@ -58,12 +68,22 @@ public class Bot extends JinFreechessConnection implements GameListener {
   private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd hh:mm:ss aaa");
   private MoveGeneration moveGeneration = new MoveGeneration();
   private BoardEvaluator eval = new SimpleEvaluator(moveGeneration);
-  private ABSearch search = new ABSearch(moveGeneration, eval);
+  private ParallelSearch search = new ParallelSearch(moveGeneration, eval, THREADS, HASH_MB);
+  private int searchHashMB = HASH_MB;
   private Move[] availableMoves = Move.createMoves(100);
   private IterativeSearch iterativeSearch = new IterativeSearch(search, moveGeneration, eval);
+  private TimeManager timeManager = new TimeManager();
   private Thread searchThread;
+  private SearchThread searchRunner;
   private int lastScore = 0;
 
+  // our move and the reply expected to it, Move.encode(), from the last search
+  private volatile int expectedMove;
+  private volatile int expectedReply;
+  // the search running on the opponent's time assumes this reply, 0 when not pondering
+  private int ponderReply;
+  private Move[] ponderMoves = Move.createMoves(100);
+
   private Board gameBoard;
 
   /**
@@ -161,6 +181,8 @@ public class Bot extends JinFreechessConnection implements GameListener {
     this.owner = owner;
     this.twitterUser = twitterUser;
     this.twitterPassword = twitterPassword;
+    iterativeSearch.setTimeManager(timeManager);
+    iterativeSearch.setOpeningBook(openBook());
     //setDGState(Datagram.DG_PERSONAL_TELL, true); // This lets people talk to us.
 
     getJinListenerManager().addGameListener(this);
@@ -194,22 +216,77 @@ public class Bot extends JinFreechessConnection implements GameListener {
     System.out.println("  java " + Bot.class.getName() + " hostname port username password");
   }
 
-  private class SearchThread implements Runnable {
+  /**
+   * Runs a search, and when it ends plays its move and reports on it.  The search stops itself
+   * when the time manager says so.  As each iteration completes the bot comments on the score.
+   */
+  private class SearchThread implements Runnable, SearchListener {
     private JinConnection connection;
     private Searcher searcher;
     private Board searchBoard;
-
-    public SearchThread(JinConnection connection, Searcher searcher, Board searchBoard) {
+    private String fen;
+    // false while pondering, or once the game is over; a ponder hit sets it and the search carries on
+    private volatile boolean reporting = true;
+    private boolean searched;
+    private int score;
+    private boolean extended;
+    private boolean spoken;
+
+    public SearchThread(JinConnection connection, Searcher searcher, Board searchBoard, String fen) {
       this.connection = connection;
       this.searcher = searcher;
       this.searchBoard = searchBoard;
+      this.fen = fen;
+    }
+
+    /**
+     * Makes a ponder search the real one.  One still running reports when it ends; one that
+     * has already ended plays its move now.
+     */
+    void ponderHit(String fen) {
+      boolean ended;
+      synchronized (this) {
+        this.fen = fen;
+        reporting = true;
+        ended = searched;
+      }
+      if (ended) {
+        report();
+      }
+    }
+
+    synchronized void cancel() {
+      reporting = false;
     }
 
     public void run() {
       int score = searcher.search(searchBoard, 100);
+      synchronized (this) {
+        this.score = score;
+        searched = true;
+        if (!reporting) {
+          return;
+        }
+      }
+      report();
+    }
+
+    /**
+     * Plays the search's move and tells the owner about it.
+     */
+    private void report() {
+      System.err.println("Stopping Search");
+      Move[] pv = searcher.getPV();
+      lastScore = pv[0].score;
+      expectedMove = pv[0].encode();
+      expectedReply = pv[1].encode();
+      connection.sendCommand(pv[0].toFICSString());
+      if (foundMate) {
+        maybeTweetMatePuzzle();
+      }
 
       SearchStats stats = search.getStats();
-      if (stats.nodes < 100 && score == 0) {
+      if (stats.nodes < 100 && score == 0 && !iterativeSearch.isBookMove()) {
         connection.sendCommand("draw");
         connection.sendCommand("tell " + owner + " Detected Draw");
       }
@@ -217,100 +294,46 @@ public class Bot extends JinFreechessConnection implements GameListener {
       if (tellOwner) connection.sendCommand("tell " + owner + " s: " + formatScore(score));
       if (tellOwner) connection.sendCommand("tell " + owner + " Moves: " + Move.toString(searcher.getPV()));
       if (tellOwner) {
-        connection.sendCommand("tell " + owner + " Stats: " + stats);
+        connection.sendCommand("tell " + owner + " Stats: " + stats + " Time: " + timeManager.getElapsed() + "/" + timeManager.getSoftLimit() + "ms");
       }
-      connection = null;
     }
 
+    public void iterationComplete(int depth, int score, SearchStats stats, Move[] pv) {
+      if (!reporting) {
+        return;
+      }
 
-    protected void finalize() throws Throwable {
-      System.err.println("finalizing searcher thread");
-    }
-  }
-
-  private class SearchTimerThread implements Runnable {
-    private JinConnection connection;
-    private Searcher searcher;
-    private long maxTime;
-    private String fen;
-
-    public SearchTimerThread(JinConnection connection, IterativeSearch searcher, long maxTime, String fen) {
-      this.connection = connection;
-      this.searcher = searcher;
-      this.maxTime = maxTime;
-      this.fen = fen;
-    }
-
-    public void run() {
-      long start = System.currentTimeMillis();
-      long end = System.currentTimeMillis();
-      boolean extended = false;
-      boolean spoken = false;
-      while ((end - start <= maxTime)) {
-        if (maxTime > 2000) {
-          try {
-            Thread.sleep(maxTime / 4);
-          } catch (InterruptedException e) {
-
-          }
-        } else {
-          try {
-            Thread.sleep(maxTime + 1);
-          } catch (InterruptedException e) {
-
-          }
-        }
-
-        Move pvMove = searcher.getPV()[0];
-        int score = pvMove.score;
-
-        if (maxTime > 700) {
-          if (score < lastScore - 45 && score > -Searcher.MATE + 100) {
-            lastScore = searcher.getPV()[0].score;
-            maxTime += maxTime / 2;
-            String thinkComment = getThinkComment();
-            if (tellOwner) {
-              connection.sendCommand("tell " + owner + " " + thinkComment);
-            }
-            boolean playingWhite = twitterStatus.getGame().getWhiteName().equals(getUsername());
-            String oppName = !playingWhite ? twitterStatus.getGame().getWhiteName() : twitterStatus.getGame().getBlackName();
-            connection.sendCommand("kib " + oppName + " - " + thinkComment);
-            extended = true;
-          }
-        }
-
-        if (!spoken) {
-          if (score > lastScore + 10000) {
-            connection.sendCommand("kib Hee-Haw (" + formatScore(score) + ") - " + Move.toString(searcher.getPV()));
-            spoken = true;
-          } else if (score > lastScore + 900) {
-            connection.sendCommand("kib Zoiks! (" + formatScore(score) + ") - " + Move.toString(searcher.getPV()));
-            spoken = true;
-          } else if (score > lastScore + 300) {
-            connection.sendCommand("kib Ruh roh... (" + formatScore(score) + ") - " + Move.toString(searcher.getPV()));
-            spoken = true;
-          }
+      // the time manager gives a falling score longer, say so
+      long timeLeft = timeManager.getSoftLimit() - timeManager.getElapsed();
+      if (!extended && timeLeft > 700 && score < lastScore - 45 && score > -Searcher.MATE + 100) {
+        lastScore = score;
+        String thinkComment = getThinkComment(timeLeft);
+        if (tellOwner) {
+          connection.sendCommand("tell " + owner + " " + thinkComment);
         }
+        boolean playingWhite = twitterStatus.getGame().getWhiteName().equals(getUsername());
+        String oppName = !playingWhite ? twitterStatus.getGame().getWhiteName() : twitterStatus.getGame().getBlackName();
+        connection.sendCommand("kib " + oppName + " - " + thinkComment);
+        extended = true;
+      }
 
-        if (Math.abs(score) < Searcher.MATE &&
-                Math.abs(score) > Searcher.MATE - 300) {
-          System.err.println("Found Mate");
-          if (score > Searcher.MATE - 300) {
-            foundMate = true;
-          }
-          break;
+      if (!spoken) {
+        if (score > lastScore + 10000) {
+          connection.sendCommand("kib Hee-Haw (" + formatScore(score) + ") - " + Move.toString(pv));
+          spoken = true;
+        } else if (score > lastScore + 900) {
+          connection.sendCommand("kib Zoiks! (" + formatScore(score) + ") - " + Move.toString(pv));
+          spoken = true;
+        } else if (score > lastScore + 300) {
+          connection.sendCommand("kib Ruh roh... (" + formatScore(score) + ") - " + Move.toString(pv));
+          spoken = true;
         }
-
-        System.err.println("Checking on search (" + lastScore + " -> " + score + ")");
-        end = System.currentTimeMillis();
       }
-      System.err.println("Stopping Search");
-      lastScore = searcher.getPV()[0].score;
-      connection.sendCommand(searcher.getPV()[0].toFICSString());
-      if (foundMate) {
-        maybeTweetMatePuzzle();
+
+      if (score > Searcher.MATE - 300 && score < Searcher.MATE) {
+        System.err.println("Found Mate");
+        foundMate = true;
       }
-      searcher.stop();
     }
 
     private void maybeTweetMatePuzzle() {
@@ -403,36 +426,36 @@ public class Bot extends JinFreechessConnection implements GameListener {
       }
     }
 
-    private String getThinkComment() {
+    private String getThinkComment(long maxTime) {
       String thinkComment;
       switch (thinkCommentIndex) {
         case 0: {
-          thinkComment = "Let me look at this position for " + (maxTime / 2) + " more milliseconds (" + "you may wish i'd tell u what i'm thinking..." + ")";
+          thinkComment = "Let me look at this position for " + maxTime + " more milliseconds (" + "you may wish i'd tell u what i'm thinking..." + ")";
           thinkCommentIndex++;
           break;
         }
         case 1: {
-          thinkComment = "Gimme " + (maxTime / 2) + " milliseconds...this line looks interesting: " + "you may wish i'd tell u what i'm thinking...";
+          thinkComment = "Gimme " + maxTime + " milliseconds...this line looks interesting: " + "you may wish i'd tell u what i'm thinking...";
           thinkCommentIndex++;
           break;
         }
         case 2: {
-          thinkComment = "Please allow me to concentrate for just " + (maxTime / 2) + " more milliseconds (" + "you may wish i'd tell u what i'm thinking..." + ")";
+          thinkComment = "Please allow me to concentrate for just " + maxTime + " more milliseconds (" + "you may wish i'd tell u what i'm thinking..." + ")";
           thinkCommentIndex++;
           break;
         }
         case 3: {
-          thinkComment = "Hmmm... I'm gonna take an extra " + (maxTime / 2) + " milliseconds to think - this line looks interesting: " + "you may wish i'd tell u what i'm thinking...";
+          thinkComment = "Hmmm... I'm gonna take an extra " + maxTime + " milliseconds to think - this line looks interesting: " + "you may wish i'd tell u what i'm thinking...";
           thinkCommentIndex++;
           break;
         }
         case 4: {
-          thinkComment = "Interesting...I'll need " + (maxTime / 2) + " milliseconds more time to ponder this (" + "you may wish i'd tell u what i'm thinking..." + ")";
+          thinkComment = "Interesting...I'll need " + maxTime + " milliseconds more time to ponder this (" + "you may wish i'd tell u what i'm thinking..." + ")";
           thinkCommentIndex++;
           break;
         }
         case 5: {
-          thinkComment = "I'll need to think on this for " + (maxTime / 2) + " milliseconds longer. (" + "you may wish i'd tell u what i'm thinking..." + ")";
+          thinkComment = "I'll need to think on this for " + maxTime + " milliseconds longer. (" + "you may wish i'd tell u what i'm thinking..." + ")";
           thinkCommentIndex = 0;
           break;
         }
@@ -445,7 +468,7 @@ public class Bot extends JinFreechessConnection implements GameListener {
     }
 
     protected void finalize() throws Throwable {
-      System.err.println("finalizing timer thread");
+      System.err.println("finalizing searcher thread");
     }
   }
 
@@ -457,8 +480,17 @@ public class Bot extends JinFreechessConnection implements GameListener {
     JinFreechessConnection.InternalGameData gameData =
             (JinFreechessConnection.InternalGameData) ongoingGamesData.get(gameNumber);
 
-    search = new ABSearch(moveGeneration, eval);
-    iterativeSearch = new IterativeSearch(search, moveGeneration, eval);
+    // reallocating a big table every game is slow, so keep it unless the settings changed
+    if (search.getThreads() != THREADS || searchHashMB != HASH_MB) {
+      search = new ParallelSearch(moveGeneration, eval, THREADS, HASH_MB);
+      searchHashMB = HASH_MB;
+      OpeningBook book = iterativeSearch.getOpeningBook();
+      iterativeSearch = new IterativeSearch(search, moveGeneration, eval);
+      iterativeSearch.setTimeManager(timeManager);
+      iterativeSearch.setOpeningBook(book);
+    } else {
+      search.getAbHashtable().clearInBackground();
+    }
 
     gameBoard = new Board();
     //((SimpleEvaluator)eval).pawnHash.clear();
@@ -473,6 +505,9 @@ public class Bot extends JinFreechessConnection implements GameListener {
     }
 
     twitterStatus.currentGame = evt.getGame();
+    expectedMove = 0;
+    expectedReply = 0;
+    ponderReply = 0;
     talkedMate = false;
     foundMate = false;
   }
@@ -518,6 +553,10 @@ public class Bot extends JinFreechessConnection implements GameListener {
     }
 
     System.err.println("Stopping search on game end");
+    ponderReply = 0;
+    if (searchRunner != null) {
+      searchRunner.cancel();
+    }
     iterativeSearch.stop();
     if (searchThread != null) {
       try {
@@ -552,6 +591,22 @@ public class Bot extends JinFreechessConnection implements GameListener {
 //    if(move != null) evt.getConnection().sendCommand("tell " + owner + " board move: " + move.toString());
     if (evt.getGame().isUserAllowedToMovePieces(evt.getPosition().getCurrentPlayer()) &&
             (!currentSearchEPD.equals(evt.getGame().getInitialPosition().getFEN()) || evt.getGame().getPliesSinceStart() == 0)) {
+      boolean ponderMissed = false;
+      if (ponderReply != 0) {
+        boolean hit = move != null && move.encode() == ponderReply;
+        ponderReply = 0;
+        if (hit) {
+          // the search already on this position becomes the real one, from now on against our clock
+          startClock(evt, gameData);
+          System.err.println("Ponder hit");
+          currentSearchEPD = evt.getGame().getInitialPosition().getFEN();
+          searchRunner.ponderHit(gameData.boardData.getBoardFEN());
+          return;
+        }
+        System.err.println("Ponder miss");
+        iterativeSearch.stop();
+        ponderMissed = true;
+      }
       if (!iterativeSearch.isDone()) {
         System.err.println("Waiting for search...");
         try {
@@ -576,19 +631,7 @@ public class Bot extends JinFreechessConnection implements GameListener {
       searchBoard.repetitionTable = gameBoard.repetitionTable;
       searchBoard.fiftyMoveTable = gameBoard.fiftyMoveTable;
       searchBoard.moveIndex = gameBoard.moveIndex;
-
-      for (int t = 0; t < 128; t++) {
-        if (gameBoard.boardSquares[t] == null) {
-          continue;
-        }
-        System.arraycopy(
-                gameBoard.boardSquares[t].enPassentInfo,
-                0,
-                searchBoard.boardSquares[t].enPassentInfo,
-                0,
-                searchBoard.boardSquares[t].enPassentInfo.length
-        );
-      }
+      searchBoard.setEnPassentSquare(gameBoard.getEnPassentSquare());
 
 //      searchBoard.moveHistory = gameBoard.moveHistory;
 /*
@@ -596,13 +639,18 @@ public class Bot extends JinFreechessConnection implements GameListener {
       searchBoard.pawnHash = gameBoard.pawnHash;
 */
 
-      iterativeSearch.reset();
-      searchThread = new Thread(new SearchThread(evt.getConnection(), iterativeSearch, searchBoard));
+      if (ponderMissed) {
+        // much of what the ponder search stored is still good, so the search doesn't age it
+        search.getAbHashtable().keepGeneration();
+      }
+      String fen = gameData.boardData.getBoardFEN();
+      startClock(evt, gameData);
+      searchRunner = new SearchThread(evt.getConnection(), iterativeSearch, searchBoard, fen);
+      iterativeSearch.setListener(searchRunner);
+      searchThread = new Thread(searchRunner);
       searchThread.setPriority(6);
       searchThread.start();
 
-      String fen = gameData.boardData.getBoardFEN();
-
       System.err.println("MoveIndex: " + searchBoard.moveIndex);
       System.err.println("GB Approaching Draw: " + gameBoard.isApproachingDraw());
       System.err.println("SB Approaching Draw: " + searchBoard.isApproachingDraw());
@@ -613,16 +661,58 @@ public class Bot extends JinFreechessConnection implements GameListener {
 
       System.err.println("Searching (" + formatScore(score) + ") ...");
       System.err.println(searchBoard.toString());
-      long maxTime = getTimeForMove(evt, gameData);
-      Thread searchTimerThread = new Thread(new SearchTimerThread(evt.getConnection(), iterativeSearch, maxTime, fen));
-      searchTimerThread.setPriority(7);
-      searchTimerThread.start();
     } else {
       System.err.println("Waiting for opponent...");
+      if (PONDER && move != null && move.encode() == expectedMove && expectedReply != 0) {
+        startPondering(evt.getConnection(), expectedReply);
+      }
 //      System.gc();
     }
   }
 
+  /**
+   * Searches on the opponent's time, from the position after the reply our last search
+   * expected.  positionChanged() keeps the search if the opponent plays it.
+   */
+  private void startPondering(JinConnection connection, int reply) {
+    if (searchThread != null) {
+      try {
+        searchThread.join();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+    }
+
+    Board ponderBoard = gameBoard.copy();
+    int count = moveGeneration.generateFullMoves(ponderMoves, ponderBoard);
+    Move ponderMove = null;
+    for (int i = 0; i < count; i++) {
+      if (ponderMoves[i].encode() == reply) {
+        ponderMove = ponderMoves[i];
+        break;
+      }
+    }
+    if (ponderMove == null) {
+      return;
+    }
+    ponderBoard.make(ponderMove);
+    if (ponderBoard.isSquareCheckedByColor(ponderBoard.turn == 1 ? ponderBoard.blackKing.square : ponderBoard.whiteKing.square, ponderBoard.turn)) {
+      return;
+    }
+
+    System.err.println("Pondering on " + ponderMove);
+    ponderReply = reply;
+    // no limit until the opponent moves
+    timeManager.clear();
+    searchRunner = new SearchThread(connection, iterativeSearch, ponderBoard, null);
+    searchRunner.cancel();
+    iterativeSearch.setListener(searchRunner);
+    searchThread = new Thread(searchRunner);
+    // below the game's own search
+    searchThread.setPriority(5);
+    searchThread.start();
+  }
+
   private Move makeGameMovesOnBoard(InternalGameData gameData, Board board) {
     if (gameData.moveList.size() == 0) {
       return null;
@@ -690,32 +780,39 @@ public class Bot extends JinFreechessConnection implements GameListener {
     return actualMove;
   }
 
-  private long getTimeForMove(PositionChangedEvent evt, InternalGameData gameData) {
-    int timeLeft = (evt.getGame().getUserPlayer().isWhite() ?
-            gameData.boardData.getWhiteTime() :
-            gameData.boardData.getBlackTime());
-
-    long maxTime;
-    if (gameData.boardData.getNextMoveNumber() < 2) {
-      maxTime = timeLeft / 36;
-    } else if (gameData.boardData.getNextMoveNumber() < 12) {
-      maxTime = timeLeft / 32;
-    } else if (gameData.boardData.getNextMoveNumber() > 30 && timeLeft < 5000) {
-      maxTime = timeLeft / 34;
-    }
-/*
-    else if(timeLeft < 15000 && timeLeft > 10000)
-    {
-      maxTime = 1000;
+  /**
+   * @return the opening book, or null if there isn't one
+   */
+  private static OpeningBook openBook() {
+    File file = new File(BOOK);
+    if (!file.isFile()) {
+      System.err.println("No opening book at " + file.getAbsolutePath());
+      return null;
     }
-*/
-    else {
-      maxTime = timeLeft / 29;
+    try {
+      OpeningBook book = new OpeningBook(file);
+      System.err.println("Opening book " + file + ": " + book.size() + " entries");
+      return book;
+    } catch (IOException e) {
+      System.err.println("Unable to read opening book " + file + ": " + e.getMessage());
+      return null;
     }
+  }
+
+  /**
+   * Starts the time manager on our clock.  FICS games are sudden death plus increment,
+   * so there are no moves to go.
+   */
+  private void startClock(PositionChangedEvent evt, InternalGameData gameData) {
+    boolean white = evt.getGame().getUserPlayer().isWhite();
+    int timeLeft = white ? gameData.boardData.getWhiteTime() : gameData.boardData.getBlackTime();
+    int increment = white ? evt.getGame().getWhiteInc() : evt.getGame().getBlackInc();
 
-    System.err.println("Time Left: " + timeLeft);
-    System.err.println("MaxTime: " + maxTime);
-    return maxTime;
+    timeManager.setMoveOverhead(OVERHEAD);
+    timeManager.start(timeLeft, increment, 0, gameData.boardData.getNextMoveNumber());
+
+    System.err.println("Time Left: " + timeLeft + " +" + increment);
+    System.err.println("Soft/Hard: " + timeManager.getSoftLimit() + "/" + timeManager.getHardLimit());
   }
 
   public void takebackOccurred(TakebackEvent evt) {
@@ -956,9 +1053,43 @@ public class Bot extends JinFreechessConnection implements GameListener {
             sendCommand("tell " + owner + " no... e.g. set " + SET_TWEET_SOFT + " 8");
           }
         }
+        if (message.indexOf(" " + SET_THREADS + " ") > -1) {
+          try {
+            THREADS = Math.max(1, Integer.parseInt(message.substring(message.indexOf(" " + SET_THREADS + " ") + SET_THREADS.length() + 2).trim()));
+            sendCommand("tell " + owner + " " + SET_THREADS + " will be " + THREADS + " from the next game");
+          }
+          catch (NumberFormatException e) {
+            sendCommand("tell " + owner + " no... e.g. set " + SET_THREADS + " 4");
+          }
+        }
+        if (message.indexOf(" " + SET_HASH + " ") > -1) {
+          try {
+            HASH_MB = Math.max(1, Integer.parseInt(message.substring(message.indexOf(" " + SET_HASH + " ") + SET_HASH.length() + 2).trim()));
+            sendCommand("tell " + owner + " " + SET_HASH + " will be " + HASH_MB + "MB from the next game");
+          }
+          catch (NumberFormatException e) {
+            sendCommand("tell " + owner + " no... e.g. set " + SET_HASH + " 1024");
+          }
+        }
+        if (message.indexOf(" " + SET_PONDER + " ") > -1) {
+          PONDER = Boolean.parseBoolean(message.substring(message.indexOf(" " + SET_PONDER + " ") + SET_PONDER.length() + 2).trim());
+          sendCommand("tell " + owner + " " + SET_PONDER + ": " + PONDER);
+        }
+        if (message.indexOf(" " + SET_OVERHEAD + " ") > -1) {
+          try {
+            OVERHEAD = Math.max(0, Integer.parseInt(message.substring(message.indexOf(" " + SET_OVERHEAD + " ") + SET_OVERHEAD.length() + 2).trim()));
+            sendCommand("tell " + owner + " " + SET_OVERHEAD + ": " + OVERHEAD + "ms");
+          } catch (NumberFormatException e) {
+            sendCommand("tell " + owner + " no... e.g. set " + SET_OVERHEAD + " 200");
+          }
+        }
       } else if (message.startsWith("dset")) {
         sendCommand("tell " + owner + " " + SET_TWEET_MAX + ": " + TWEET_MAX);
         sendCommand("tell " + owner + " " + SET_TWEET_SOFT + ": " + TWEET_SOFT);
+        sendCommand("tell " + owner + " " + SET_THREADS + ": " + THREADS);
+        sendCommand("tell " + owner + " " + SET_HASH + ": " + search.getAbHashtable().getSizeMB() + "MB");
+        sendCommand("tell " + owner + " " + SET_PONDER + ": " + PONDER);
+        sendCommand("tell " + owner + " " + SET_OVERHEAD + ": " + OVERHEAD + "ms");
       } else if (message.indexOf("tweet ") == 0) {
         sendCommand("tell " + owner + " tweeting '" + message.substring(6) + "'");
         try {